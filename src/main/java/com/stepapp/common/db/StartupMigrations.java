@@ -0,0 +1,86 @@
+package com.stepapp.common.db;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Runs one-time data migrations at startup, once per database however many nodes start.
+ * <p>
+ * A completed migration leaves a row in startup_migrations, so later starts only pay a primary-key lookup.
+ * Otherwise the migration's "needed?" query decides; when it says no (a fresh database, or one migrated before
+ * markers existed) the marker is recorded without running the work. Work runs in one transaction that takes
+ * the migration's advisory lock (nodes starting together queue on it, and whoever comes second finds the
+ * marker) and a SHARE lock on the given tables: other nodes may already be serving, and the lock makes their
+ * writes to those tables wait instead of racing a fill computed from a snapshot. The marker commits with the work.
+ */
+@Component
+@Slf4j
+public class StartupMigrations {
+
+    /**
+     * A migration: {@code lockTables} are SHARE-locked while {@code work} runs (a comma-separated list);
+     * {@code neededQuery} is a boolean SELECT, or null when only the marker decides.
+     */
+    public record Migration(String name, long advisoryLockKey, String lockTables, String neededQuery, IntSupplier work) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+
+    public StartupMigrations(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Runs the migration unless it completed before; returns the rows its work reported.
+     */
+    public int runOnce(Migration migration) {
+        if (completed(migration)) return 0;
+        if (migration.neededQuery() != null && !needed(migration)) {
+            markCompleted(migration);
+            return 0;
+        }
+        return run(migration, false);
+    }
+
+    /**
+     * Runs the migration's work even if it completed before, e.g. to repair rows written meanwhile.
+     */
+    public int rerun(Migration migration) {
+        return run(migration, true);
+    }
+
+    private int run(Migration migration, boolean force) {
+        Integer rows = tx.execute(status -> {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> null, migration.advisoryLockKey());
+            if (!force && completed(migration)) return 0;
+            jdbcTemplate.execute("LOCK TABLE " + migration.lockTables() + " IN SHARE MODE");
+            int done = !force && migration.neededQuery() != null && !needed(migration) ? 0 : migration.work().getAsInt();
+            markCompleted(migration);
+            return done;
+        });
+        int count = rows != null ? rows : 0;
+        if (count > 0) log.info("Startup migration {} wrote {} rows", migration.name(), count);
+        return count;
+    }
+
+    private boolean completed(Migration migration) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM startup_migrations WHERE name = ?)", Boolean.class, migration.name()));
+    }
+
+    private boolean needed(Migration migration) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(migration.neededQuery(), Boolean.class));
+    }
+
+    private void markCompleted(Migration migration) {
+        jdbcTemplate.update("""
+                INSERT INTO startup_migrations (name, completed_at) VALUES (?, now())
+                ON CONFLICT (name) DO UPDATE SET completed_at = EXCLUDED.completed_at""", migration.name());
+    }
+}
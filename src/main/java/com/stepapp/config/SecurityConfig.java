@@ -1,6 +1,7 @@
 package com.stepapp.config;
 
 import com.stepapp.auth.jwt.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -22,6 +23,8 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .cors(cors -> {}) // ✅ enable CORS using the bean below
                 .authorizeHttpRequests(auth -> auth
+                        // Completion/timeout dispatches of server-sent event streams; the request was authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
                         .anyRequest().authenticated()
                 )
@@ -37,6 +40,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of("https://sportsmart-frontend.onrender.com")); // your frontend URL
         configuration.setAllowedMethods(List.of("GET","POST","PUT","PATCH","DELETE","OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));
+        configuration.setExposedHeaders(List.of("X-Next-Cursor")); // leaderboard paging cursor
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -2,6 +2,7 @@ package com.stepapp.friend;
 
 import com.stepapp.config.SecurityUtils;
 import com.stepapp.friend.dto.FriendRequestDto;
+import com.stepapp.friend.dto.FriendSuggestionDto;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -41,4 +42,10 @@ public class FriendController {
         String username = SecurityUtils.getCurrentUsernameOrNull();
         return ResponseEntity.ok(friendService.listFriends(username));
     }
+
+    @GetMapping("/suggestions")
+    public ResponseEntity<List<FriendSuggestionDto>> suggestions(@RequestParam(defaultValue = "10") int limit) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return ResponseEntity.ok(friendService.suggestions(username, limit));
+    }
 }
@@ -0,0 +1,151 @@
+package com.stepapp.friend;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in-memory adjacency of the friend graph: per user, the ids of their accepted friends as a
+ * {@link FriendIds}. Lists are loaded on demand, evicted LRU beyond {@code max-users} and expire after {@code ttl}.
+ * <p>
+ * {@link #recordChange} patches both users' cached lists once the changing transaction commits. A list is only
+ * stored when no friendship change was in flight or committed while it was loaded; a load racing a change is
+ * returned but not cached. Friendship changes are rare, so one counter pair covers all users. Changes made by
+ * other nodes become visible after {@code ttl}.
+ */
+@Component
+class FriendGraph {
+
+    interface Loader {
+        Collection<Long> load(Long userId);
+    }
+
+    private record Adjacency(FriendIds friends, long loadedAtNanos) {}
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Map<Long, Adjacency> lists;
+    private int inflightChanges;
+    private long completedChanges;
+    private long bytesUsed;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    FriendGraph(
+            MeterRegistry meterRegistry,
+            @Value("${friends.graph.enabled:true}") boolean enabled,
+            @Value("${friends.graph.max-users:100000}") int maxUsers,
+            @Value("${friends.graph.ttl:PT15M}") Duration ttl
+    ) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.lists = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Adjacency> eldest) {
+                if (size() <= maxUsers) return false;
+                bytesUsed -= eldest.getValue().friends().bytes();
+                return true;
+            }
+        };
+
+        this.hits = Counter.builder("friends.graph.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("friends.graph.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("friends.graph.users", this, FriendGraph::userCount).register(meterRegistry);
+        Gauge.builder("friends.graph.memory", this, FriendGraph::memoryBytes).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Ids of the user's accepted friends. On a miss the loader runs without holding the cache lock.
+     */
+    FriendIds friendsOf(Long userId, Loader loader) {
+        if (!enabled) return FriendIds.of(loader.load(userId));
+        long token;
+        synchronized (this) {
+            Adjacency a = lists.get(userId);
+            if (a != null && System.nanoTime() - a.loadedAtNanos() <= ttlNanos) {
+                hits.increment();
+                return a.friends();
+            }
+            misses.increment();
+            token = inflightChanges > 0 ? -1 : completedChanges;
+        }
+
+        FriendIds loaded = FriendIds.of(loader.load(userId));
+        synchronized (this) {
+            if (token >= 0 && inflightChanges == 0 && completedChanges == token) put(userId, new Adjacency(loaded, System.nanoTime()));
+        }
+        return loaded;
+    }
+
+    /**
+     * Registers that the friendship of two users started ({@code friends}) or ended in the current transaction;
+     * both cached lists are patched after commit.
+     */
+    void recordChange(Long userId, Long friendId, boolean friends) {
+        if (!enabled) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (this) {
+                patch(userId, friendId, friends);
+                patch(friendId, userId, friends);
+                completedChanges++;
+            }
+            return;
+        }
+        synchronized (this) {
+            inflightChanges++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (FriendGraph.this) {
+                    if (status == STATUS_COMMITTED) {
+                        patch(userId, friendId, friends);
+                        patch(friendId, userId, friends);
+                    } else if (status == STATUS_UNKNOWN) {
+                        remove(userId);
+                        remove(friendId);
+                    }
+                    inflightChanges--;
+                    completedChanges++;
+                }
+            }
+        });
+    }
+
+    // --- helpers below run with the monitor held ---
+
+    private void patch(Long userId, Long friendId, boolean friends) {
+        Adjacency a = lists.get(userId);
+        if (a == null) return;
+        put(userId, new Adjacency(friends ? a.friends().with(friendId) : a.friends().without(friendId), a.loadedAtNanos()));
+    }
+
+    private void put(Long userId, Adjacency a) {
+        Adjacency old = lists.put(userId, a);
+        if (old != null) bytesUsed -= old.friends().bytes();
+        bytesUsed += a.friends().bytes();
+    }
+
+    private void remove(Long userId) {
+        Adjacency old = lists.remove(userId);
+        if (old != null) bytesUsed -= old.friends().bytes();
+    }
+
+    private synchronized int userCount() {
+        return lists.size();
+    }
+
+    private synchronized long memoryBytes() {
+        return bytesUsed;
+    }
+}
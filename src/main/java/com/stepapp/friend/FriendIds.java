@@ -0,0 +1,71 @@
+package com.stepapp.friend;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Immutable set of user ids, stored as a sorted {@code long[]}. Membership is a binary search;
+ * {@link #with}/{@link #without} return copies, so instances can be shared between threads freely.
+ */
+public final class FriendIds {
+
+    public static final FriendIds EMPTY = new FriendIds(new long[0]);
+
+    private final long[] ids;
+
+    private FriendIds(long[] sortedIds) {
+        this.ids = sortedIds;
+    }
+
+    static FriendIds of(Collection<Long> ids) {
+        long[] sorted = ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        return sorted.length == 0 ? EMPTY : new FriendIds(sorted);
+    }
+
+    public boolean contains(long userId) {
+        return Arrays.binarySearch(ids, userId) >= 0;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    /** Ids in ascending order. */
+    public LongStream stream() {
+        return Arrays.stream(ids);
+    }
+
+    public List<Long> toList() {
+        return stream().boxed().toList();
+    }
+
+    FriendIds with(long userId) {
+        int i = Arrays.binarySearch(ids, userId);
+        if (i >= 0) return this;
+        int at = -i - 1;
+        long[] out = new long[ids.length + 1];
+        System.arraycopy(ids, 0, out, 0, at);
+        out[at] = userId;
+        System.arraycopy(ids, at, out, at + 1, ids.length - at);
+        return new FriendIds(out);
+    }
+
+    FriendIds without(long userId) {
+        int i = Arrays.binarySearch(ids, userId);
+        if (i < 0) return this;
+        long[] out = new long[ids.length - 1];
+        System.arraycopy(ids, 0, out, 0, i);
+        System.arraycopy(ids, i + 1, out, i, ids.length - i - 1);
+        return new FriendIds(out);
+    }
+
+    long bytes() {
+        return 16 + 8L * ids.length;
+    }
+}
@@ -8,7 +8,8 @@ import java.time.OffsetDateTime;
 
 @Entity
 @Table(name = "friend_requests",
-        uniqueConstraints = @UniqueConstraint(columnNames = {"sender_id", "receiver_id"}))
+        uniqueConstraints = @UniqueConstraint(columnNames = {"sender_id", "receiver_id"}),
+        indexes = @Index(name = "idx_friend_requests_receiver_status", columnList = "receiver_id, status"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,15 @@
+package com.stepapp.friend;
+
+public interface FriendRequestBulkRepository {
+
+    @FunctionalInterface
+    interface EdgeConsumer {
+        void accept(long senderId, long receiverId, boolean accepted);
+    }
+
+    /**
+     * Streams every friend request as a (sender, receiver) edge, fetching {@code fetchSize} rows per round trip.
+     * Requires an open transaction (the PostgreSQL driver only uses a cursor outside autocommit).
+     */
+    void forEachEdge(int fetchSize, EdgeConsumer action);
+}
@@ -0,0 +1,22 @@
+package com.stepapp.friend;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+
+@RequiredArgsConstructor
+class FriendRequestBulkRepositoryImpl implements FriendRequestBulkRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void forEachEdge(int fetchSize, EdgeConsumer action) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT sender_id, receiver_id, status = 'ACCEPTED' FROM friend_requests");
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getLong(1), rs.getLong(2), rs.getBoolean(3)));
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.List;
 import java.util.Optional;
 
-public interface FriendRequestRepository extends JpaRepository<FriendRequest, Long> {
+public interface FriendRequestRepository extends JpaRepository<FriendRequest, Long>, FriendRequestBulkRepository {
 
     Optional<FriendRequest> findBySenderAndReceiver(User sender, User receiver);
 
@@ -14,7 +14,4 @@ public interface FriendRequestRepository extends JpaRepository<FriendRequest, Lo
 
     List<FriendRequest> findAllBySenderAndStatus(User sender, FriendRequest.Status status);
 
-    List<FriendRequest> findAllByStatusAndSenderOrReceiver(FriendRequest.Status status, User sender, User receiver);
-
-    List<FriendRequest> findAllBySenderOrReceiverAndStatus(User sender, User receiver, FriendRequest.Status status);
 }
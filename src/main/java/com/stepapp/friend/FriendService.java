@@ -1,6 +1,7 @@
 package com.stepapp.friend;
 
 import com.stepapp.friend.dto.FriendRequestDto;
+import com.stepapp.friend.dto.FriendSuggestionDto;
 import com.stepapp.user.User;
 import com.stepapp.user.UserService;
 import lombok.RequiredArgsConstructor;
@@ -8,14 +9,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
 public class FriendService {
 
     private final FriendRequestRepository friendRepo;
+    private final FriendshipRepository friendshipRepo;
     private final UserService userService;
+    private final FriendGraph graph;
+    private final FriendSuggestions suggestions;
 
     @Transactional
     public FriendRequestDto sendRequest(String senderUsername, String receiverUsername) {
@@ -48,8 +54,27 @@ public class FriendService {
             throw new IllegalArgumentException("You are not the receiver of this request");
         }
 
+        boolean wasAccepted = fr.getStatus() == FriendRequest.Status.ACCEPTED;
         fr.setStatus(accept ? FriendRequest.Status.ACCEPTED : FriendRequest.Status.REJECTED);
-        return FriendRequestDto.from(friendRepo.save(fr));
+        // Flushed before the edges are touched: FriendshipBackfill locks the tables in this order
+        FriendRequestDto dto = FriendRequestDto.from(friendRepo.saveAndFlush(fr));
+
+        Long senderId = fr.getSender().getId(), receiverId = fr.getReceiver().getId();
+        if (accept && !wasAccepted) {
+            friendshipRepo.link(senderId, receiverId);
+            graph.recordChange(senderId, receiverId, true);
+        } else if (!accept && wasAccepted && !acceptedReverse(fr)) {
+            friendshipRepo.unlink(senderId, receiverId);
+            graph.recordChange(senderId, receiverId, false);
+        }
+        return dto;
+    }
+
+    // Both users may have sent a request; the friendship lasts while either of them is accepted
+    private boolean acceptedReverse(FriendRequest fr) {
+        return friendRepo.findBySenderAndReceiver(fr.getReceiver(), fr.getSender())
+                .filter(r -> r.getStatus() == FriendRequest.Status.ACCEPTED)
+                .isPresent();
     }
 
     @Transactional(readOnly = true)
@@ -62,9 +87,35 @@ public class FriendService {
     @Transactional(readOnly = true)
     public List<String> listFriends(String username) {
         User u = userService.getByUsernameOrThrow(username);
-        return friendRepo.findAllBySenderOrReceiverAndStatus(u, u, FriendRequest.Status.ACCEPTED)
-                .stream()
-                .map(fr -> fr.getSender().equals(u) ? fr.getReceiver().getUsername() : fr.getSender().getUsername())
+        List<Long> ids = friendIds(u.getId()).toList();
+        Map<Long, String> names = userService.usernamesById(ids);
+        return ids.stream().map(names::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * "People you may know", best first, from the periodically refreshed suggestion store.
+     */
+    @Transactional(readOnly = true)
+    public List<FriendSuggestionDto> suggestions(String username, int limit) {
+        User u = userService.getByUsernameOrThrow(username);
+        FriendIds friends = friendIds(u.getId());
+        // The store lags the graph; drop users that became friends since the last refresh
+        List<FriendSuggestions.Suggestion> picks = suggestions.suggestionsFor(u.getId()).stream()
+                .filter(s -> !friends.contains(s.userId()))
+                .limit(Math.max(1, limit))
+                .toList();
+        Map<Long, String> names = userService.usernamesById(picks.stream().map(FriendSuggestions.Suggestion::userId).toList());
+        return picks.stream()
+                .filter(s -> names.containsKey(s.userId()))
+                .map(s -> new FriendSuggestionDto(names.get(s.userId()), s.mutualFriends()))
                 .toList();
     }
+
+    /**
+     * Ids of the user's accepted friends (either direction), from the cached friend graph.
+     */
+    @Transactional(readOnly = true)
+    public FriendIds friendIds(Long userId) {
+        return graph.friendsOf(userId, friendshipRepo::findFriendIds);
+    }
 }
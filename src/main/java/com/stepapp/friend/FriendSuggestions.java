@@ -0,0 +1,344 @@
+package com.stepapp.friend;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * "People you may know": per user, the top-K users they have no friend request with (in either direction, any
+ * status), ranked by mutual friends. Computed in the background from the whole friend graph and served from an
+ * immutable in-memory {@link Store} that each refresh replaces.
+ * <p>
+ * A refresh streams friend_requests once into compact adjacency arrays (dense int indexes, every user's
+ * neighbours sorted), then walks two hops from every user on a fork-join pool split into user shards. Mutual
+ * counts go into a scratch array of one int per user, reused between shards (so at most one per worker); existing
+ * contacts are skipped by binary search in the user's sorted contact list. Each shard keeps only the suggestions
+ * it found, and the store is assembled from the shards at the end, so result memory follows the suggestions
+ * actually made rather than users times top-K. Friends with more than {@code max-fanout} friends are not expanded, so one very
+ * popular user cannot blow up everyone's walk. Each node computes its own store; suggestions lag the graph by up to
+ * {@code refresh-interval}.
+ */
+@Component
+@Slf4j
+class FriendSuggestions {
+
+    record Suggestion(long userId, int mutualFriends) {}
+
+    private final FriendRequestRepository friendRepo;
+    private final TransactionTemplate readTx;
+    private final boolean enabled;
+    private final int topK;
+    private final int maxFanout;
+    private final int parallelism;
+    private final int shardSize;
+    private final int fetchSize;
+    private final Timer refreshTimer;
+    private volatile Store store = Store.EMPTY;
+
+    FriendSuggestions(
+            FriendRequestRepository friendRepo,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${friends.suggestions.enabled:true}") boolean enabled,
+            @Value("${friends.suggestions.top-k:20}") int topK,
+            @Value("${friends.suggestions.max-fanout:5000}") int maxFanout,
+            @Value("${friends.suggestions.parallelism:0}") int parallelism,
+            @Value("${friends.suggestions.shard-size:1024}") int shardSize,
+            @Value("${friends.suggestions.fetch-size:10000}") int fetchSize
+    ) {
+        this.friendRepo = friendRepo;
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setReadOnly(true);
+        this.enabled = enabled;
+        this.topK = Math.max(1, topK);
+        this.maxFanout = maxFanout;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.shardSize = Math.max(1, shardSize);
+        this.fetchSize = fetchSize;
+        this.refreshTimer = Timer.builder("friends.suggestions.refresh").register(meterRegistry);
+        Gauge.builder("friends.suggestions.users", this, s -> s.store.size()).register(meterRegistry);
+    }
+
+    /**
+     * Stored suggestions for a user, best first; empty until the first refresh has finished.
+     */
+    List<Suggestion> suggestionsFor(long userId) {
+        return store.forUser(userId);
+    }
+
+    @Scheduled(fixedDelayString = "${friends.suggestions.refresh-interval:PT1H}",
+            initialDelayString = "${friends.suggestions.initial-delay:PT1M}")
+    void refresh() {
+        if (!enabled) return;
+        refreshTimer.record(() -> {
+            Edges edges = new Edges();
+            readTx.executeWithoutResult(status -> friendRepo.forEachEdge(fetchSize, edges::add));
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                store = compute(edges, topK, maxFanout, shardSize, pool);
+            } finally {
+                pool.shutdown();
+            }
+            log.info("Refreshed friend suggestions: {} requests, {} users with suggestions", edges.count, store.size());
+        });
+    }
+
+    static Store compute(Edges edges, int topK, int maxFanout, int shardSize, ForkJoinPool pool) {
+        long[] ids = new long[Math.multiplyExact(edges.count, 2)];
+        System.arraycopy(edges.senders, 0, ids, 0, edges.count);
+        System.arraycopy(edges.receivers, 0, ids, edges.count, edges.count);
+        ids = Arrays.stream(ids).sorted().distinct().toArray();
+
+        int[] from = new int[edges.count], to = new int[edges.count];
+        for (int i = 0; i < edges.count; i++) {
+            from[i] = Arrays.binarySearch(ids, edges.senders[i]);
+            to[i] = Arrays.binarySearch(ids, edges.receivers[i]);
+        }
+        Adjacency friends = Adjacency.of(ids.length, from, to, edges.accepted, edges.count);
+        Adjacency contacts = Adjacency.of(ids.length, from, to, null, edges.count);
+
+        Computation c = new Computation(ids.length, friends, contacts, topK, maxFanout, shardSize);
+        pool.invoke(c.new Shard(0, ids.length));
+        return c.toStore(ids);
+    }
+
+    /**
+     * Undirected graph over dense indexes: neighbours of {@code i} are {@code targets[offsets[i]..offsets[i + 1])},
+     * sorted and without duplicates.
+     */
+    record Adjacency(int[] offsets, int[] targets) {
+
+        int degree(int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+
+        boolean contains(int i, int j) {
+            return Arrays.binarySearch(targets, offsets[i], offsets[i + 1], j) >= 0;
+        }
+
+        /** Edges {@code from[e] - to[e]} in both directions; only those with {@code include[e]} when given. */
+        static Adjacency of(int n, int[] from, int[] to, boolean[] include, int edges) {
+            int[] degree = new int[n + 1];
+            for (int e = 0; e < edges; e++) {
+                if (include != null && !include[e]) continue;
+                degree[from[e]]++;
+                degree[to[e]]++;
+            }
+            int[] start = new int[n + 1];
+            for (int i = 0; i < n; i++) start[i + 1] = Math.addExact(start[i], degree[i]);
+            int[] targets = new int[start[n]];
+            int[] fill = Arrays.copyOf(start, n);
+            for (int e = 0; e < edges; e++) {
+                if (include != null && !include[e]) continue;
+                targets[fill[from[e]]++] = to[e];
+                targets[fill[to[e]]++] = from[e];
+            }
+            // Sort each list and squeeze out duplicates (requests in both directions)
+            int[] offsets = new int[n + 1];
+            int w = 0;
+            for (int i = 0; i < n; i++) {
+                Arrays.sort(targets, start[i], start[i + 1]);
+                offsets[i] = w;
+                for (int k = start[i]; k < start[i + 1]; k++) {
+                    if (w == offsets[i] || targets[w - 1] != targets[k]) targets[w++] = targets[k];
+                }
+            }
+            offsets[n] = w;
+            return new Adjacency(offsets, Arrays.copyOf(targets, w));
+        }
+    }
+
+    /**
+     * Per-user top-K results of one refresh, collected per shard.
+     */
+    private static final class Computation {
+        private final int n;
+        private final Adjacency friends;
+        private final Adjacency contacts;
+        private final int topK;
+        private final int maxFanout;
+        private final int shardSize;
+        private final Queue<ShardResult> results = new ConcurrentLinkedQueue<>();
+        // Count arrays are all zero again after every user, so shards pass them on instead of allocating
+        private final Queue<int[]> scratch = new ConcurrentLinkedQueue<>();
+
+        Computation(int n, Adjacency friends, Adjacency contacts, int topK, int maxFanout, int shardSize) {
+            this.n = n;
+            this.friends = friends;
+            this.contacts = contacts;
+            this.topK = topK;
+            this.maxFanout = maxFanout;
+            this.shardSize = shardSize;
+        }
+
+        /**
+         * Suggestions of the users {@code [from, to)}: {@code found[u - from]} of them per user, in user order.
+         */
+        private record ShardResult(int from, int[] found, IntList candidates, IntList mutual) {}
+
+        final class Shard extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            Shard(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > shardSize) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Shard(from, mid), new Shard(mid, to));
+                    return;
+                }
+                int[] count = scratch.poll();
+                if (count == null) count = new int[n];
+                IntList touched = new IntList();
+                int[] topCandidates = new int[topK], topMutual = new int[topK];
+                ShardResult result = new ShardResult(from, new int[to - from], new IntList(), new IntList());
+                for (int u = from; u < to; u++) {
+                    int size = suggest(u, count, touched, topCandidates, topMutual);
+                    result.found()[u - from] = size;
+                    for (int k = 0; k < size; k++) {
+                        result.candidates().add(topCandidates[k]);
+                        result.mutual().add(topMutual[k]);
+                    }
+                }
+                scratch.add(count);
+                results.add(result);
+            }
+        }
+
+        /** Fills the best suggestions for {@code u} into {@code candidates}/{@code mutual}; returns how many. */
+        private int suggest(int u, int[] count, IntList touched, int[] candidates, int[] mutual) {
+            int[] targets = friends.targets();
+            for (int k = friends.offsets()[u]; k < friends.offsets()[u + 1]; k++) {
+                int v = targets[k];
+                if (friends.degree(v) > maxFanout) continue;
+                for (int m = friends.offsets()[v]; m < friends.offsets()[v + 1]; m++) {
+                    int w = targets[m];
+                    if (w != u && count[w]++ == 0) touched.add(w);
+                }
+            }
+            int size = 0;
+            for (int t = 0; t < touched.size; t++) {
+                int w = touched.values[t];
+                int c = count[w];
+                count[w] = 0;
+                if (contacts.contains(u, w)) continue;
+                // Keep the slots ordered by mutual count desc, then index (= user id) asc
+                if (size == topK && !better(c, w, mutual[size - 1], candidates[size - 1])) continue;
+                int at = size == topK ? size - 1 : size++;
+                while (at > 0 && better(c, w, mutual[at - 1], candidates[at - 1])) {
+                    mutual[at] = mutual[at - 1];
+                    candidates[at] = candidates[at - 1];
+                    at--;
+                }
+                mutual[at] = c;
+                candidates[at] = w;
+            }
+            touched.size = 0;
+            return size;
+        }
+
+        private static boolean better(int count, int index, int otherCount, int otherIndex) {
+            return count != otherCount ? count > otherCount : index < otherIndex;
+        }
+
+        Store toStore(long[] ids) {
+            List<ShardResult> shards = new ArrayList<>(results);
+            shards.sort(Comparator.comparingInt(ShardResult::from));
+            int users = 0, total = 0;
+            for (ShardResult shard : shards) {
+                for (int size : shard.found()) if (size > 0) users++;
+                total = Math.addExact(total, shard.candidates().size);
+            }
+            long[] userIds = new long[users];
+            int[] offsets = new int[users + 1];
+            long[] suggested = new long[total];
+            int[] mutualCounts = new int[total];
+            int i = 0, w = 0;
+            for (ShardResult shard : shards) {
+                int r = 0;
+                for (int u = 0; u < shard.found().length; u++) {
+                    int size = shard.found()[u];
+                    if (size == 0) continue;
+                    userIds[i] = ids[shard.from() + u];
+                    offsets[i++] = w;
+                    for (int k = 0; k < size; k++, r++, w++) {
+                        suggested[w] = ids[shard.candidates().values[r]];
+                        mutualCounts[w] = shard.mutual().values[r];
+                    }
+                }
+            }
+            offsets[users] = w;
+            return new Store(userIds, offsets, suggested, mutualCounts);
+        }
+    }
+
+    /**
+     * Immutable suggestion lists of all users: users sorted by id, their lists in {@code suggested}/{@code mutual}
+     * between {@code offsets[i]} and {@code offsets[i + 1]}.
+     */
+    record Store(long[] userIds, int[] offsets, long[] suggested, int[] mutual) {
+        static final Store EMPTY = new Store(new long[0], new int[1], new long[0], new int[0]);
+
+        int size() {
+            return userIds.length;
+        }
+
+        List<Suggestion> forUser(long userId) {
+            int i = Arrays.binarySearch(userIds, userId);
+            if (i < 0) return List.of();
+            List<Suggestion> out = new ArrayList<>(offsets[i + 1] - offsets[i]);
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) out.add(new Suggestion(suggested[k], mutual[k]));
+            return out;
+        }
+    }
+
+    /** Growable columns of streamed friend requests. */
+    static final class Edges {
+        long[] senders = new long[1024];
+        long[] receivers = new long[1024];
+        boolean[] accepted = new boolean[1024];
+        int count;
+
+        void add(long senderId, long receiverId, boolean isAccepted) {
+            if (count == senders.length) {
+                senders = Arrays.copyOf(senders, count * 2);
+                receivers = Arrays.copyOf(receivers, count * 2);
+                accepted = Arrays.copyOf(accepted, count * 2);
+            }
+            senders[count] = senderId;
+            receivers[count] = receiverId;
+            accepted[count] = isAccepted;
+            count++;
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[256];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.stepapp.friend;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.OffsetDateTime;
+
+/**
+ * One direction of an accepted friendship: every friendship is stored as (a, b) and (b, a), so "friends of x"
+ * is a range scan of the primary key (user_id, friend_id), which also covers the friend ids.
+ * Written by {@link FriendService} when a request is accepted; {@link FriendRequest} keeps the request history.
+ */
+@Entity
+@Table(name = "friendships")
+@IdClass(Friendship.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Friendship {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long friendId;
+    }
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Id
+    @Column(name = "friend_id", nullable = false)
+    private Long friendId;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+}
@@ -0,0 +1,46 @@
+package com.stepapp.friend;
+
+import com.stepapp.common.db.StartupMigrations;
+import com.stepapp.common.db.StartupMigrations.Migration;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates friendships rows for requests accepted before the table existed, once (see {@link StartupMigrations}).
+ * Setting {@code friends.friendships.backfill} forces the full scan of friend_requests on every start, e.g. while
+ * older nodes that accept requests without writing friendships are still running.
+ * <p>
+ * A response committed during the scan could be undone by it (an unfriend re-linked from a stale snapshot), so
+ * friend_requests and friendships are both locked; {@link FriendService#respondToRequest} writes the request
+ * before the edges, the order in which the locks are taken.
+ */
+@Component
+class FriendshipBackfill {
+
+    static final String MIGRATION = "friendships-from-accepted-requests";
+
+    private static final long ADVISORY_LOCK_KEY = 0x4672_6965_6E64_4266L; // "FriendBf"
+
+    private final StartupMigrations migrations;
+    private final FriendshipRepository friendshipRepo;
+    private final boolean force;
+
+    FriendshipBackfill(
+            StartupMigrations migrations,
+            FriendshipRepository friendshipRepo,
+            @Value("${friends.friendships.backfill:false}") boolean force
+    ) {
+        this.migrations = migrations;
+        this.friendshipRepo = friendshipRepo;
+        this.force = force;
+    }
+
+    @PostConstruct
+    void backfill() {
+        var migration = new Migration(MIGRATION, ADVISORY_LOCK_KEY, "friend_requests, friendships", null,
+                friendshipRepo::backfillFromAcceptedRequests);
+        if (force) migrations.rerun(migration);
+        else migrations.runOnce(migration);
+    }
+}
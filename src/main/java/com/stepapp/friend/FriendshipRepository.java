@@ -0,0 +1,43 @@
+package com.stepapp.friend;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface FriendshipRepository extends JpaRepository<Friendship, Friendship.Key> {
+
+    @Query("SELECT f.friendId FROM Friendship f WHERE f.userId = :userId")
+    List<Long> findFriendIds(Long userId);
+
+    /** Writes both directions; existing rows are kept. */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO friendships (user_id, friend_id, created_at)
+            VALUES (:userId, :friendId, now()), (:friendId, :userId, now())
+            ON CONFLICT DO NOTHING""", nativeQuery = true)
+    int link(Long userId, Long friendId);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            DELETE FROM Friendship f
+            WHERE (f.userId = :userId AND f.friendId = :friendId) OR (f.userId = :friendId AND f.friendId = :userId)""")
+    int unlink(Long userId, Long friendId);
+
+    /**
+     * Adds the missing edges of accepted friend requests (both directions). Returns the number of inserted rows.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO friendships (user_id, friend_id, created_at)
+            SELECT sender_id, receiver_id, updated_at FROM friend_requests WHERE status = 'ACCEPTED'
+            UNION ALL
+            SELECT receiver_id, sender_id, updated_at FROM friend_requests WHERE status = 'ACCEPTED'
+            ON CONFLICT DO NOTHING""", nativeQuery = true)
+    int backfillFromAcceptedRequests();
+}
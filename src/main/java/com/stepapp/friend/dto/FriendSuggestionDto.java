@@ -0,0 +1,7 @@
+package com.stepapp.friend.dto;
+
+public record FriendSuggestionDto(
+        String username,
+        int mutualFriends
+) {
+}
@@ -2,6 +2,7 @@ package com.stepapp.group;
 
 import com.stepapp.user.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,4 +11,7 @@ public interface GroupMemberRepository extends JpaRepository<GroupMember, Long>
     List<GroupMember> findAllByUser(User user);
     List<GroupMember> findAllByGroup(Group group);
     Optional<GroupMember> findByGroupAndUser(Group group, User user);
+
+    @Query("SELECT gm.user.id FROM GroupMember gm WHERE gm.group.id = :groupId")
+    List<Long> findUserIdsByGroupId(Long groupId);
 }
@@ -0,0 +1,10 @@
+package com.stepapp.group;
+
+/**
+ * Published by {@link GroupService} when a user joins or leaves a group, or the group is deleted
+ * ({@code userId} is null then). Listeners that keep per-group state should react after commit.
+ */
+public record GroupMembershipChangedEvent(Long groupId, Long userId, Change change) {
+
+    public enum Change { JOINED, LEFT, GROUP_DELETED }
+}
@@ -5,6 +5,7 @@ import com.stepapp.group.dto.GroupInvitationDto;
 import com.stepapp.user.User;
 import com.stepapp.user.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +20,7 @@ public class GroupService {
     private final GroupMemberRepository memberRepo;
     private final GroupInvitationRepository invitationRepo;
     private final UserService userService;
+    private final ApplicationEventPublisher events;
 
     // --- Создание группы ---
     @Transactional
@@ -38,6 +40,7 @@ public class GroupService {
                 .user(owner)
                 .role(GroupMember.Role.OWNER)
                 .build());
+        events.publishEvent(new GroupMembershipChangedEvent(group.getId(), owner.getId(), GroupMembershipChangedEvent.Change.JOINED));
 
         return GroupDto.from(group);
     }
@@ -86,6 +89,8 @@ public class GroupService {
                     .user(gi.getInvited())
                     .role(GroupMember.Role.MEMBER)
                     .build());
+            events.publishEvent(new GroupMembershipChangedEvent(
+                    gi.getGroup().getId(), gi.getInvited().getId(), GroupMembershipChangedEvent.Change.JOINED));
         }
 
         return GroupInvitationDto.from(gi);
@@ -126,6 +131,7 @@ public class GroupService {
         }
 
         memberRepo.delete(gm);
+        events.publishEvent(new GroupMembershipChangedEvent(groupId, user.getId(), GroupMembershipChangedEvent.Change.LEFT));
     }
 
     // --- Удалить группу ---
@@ -143,5 +149,6 @@ public class GroupService {
         }
 
         groupRepo.delete(group);
+        events.publishEvent(new GroupMembershipChangedEvent(groupId, null, GroupMembershipChangedEvent.Change.GROUP_DELETED));
     }
 }
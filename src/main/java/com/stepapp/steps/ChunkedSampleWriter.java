@@ -0,0 +1,78 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsResponse;
+import com.stepapp.user.User;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accepts samples one at a time and writes them in fixed-size chunks, each in its own transaction.
+ * Memory is bounded by the chunk size plus one counter per touched day, regardless of upload size.
+ * Not thread-safe: one writer per upload.
+ */
+class ChunkedSampleWriter {
+
+    private final StepService stepService;
+    private final TransactionTemplate tx;
+    private final User user;
+    private final StepSample.Provider provider;
+    private final ZoneId zone;
+    private final int chunkSize;
+    private final OffsetDateTime minStartedAt;
+    private final OffsetDateTime maxEndedAt = OffsetDateTime.now().plusMinutes(5);
+
+    private final List<StepSample> chunk;
+    private final Map<LocalDate, Long> addedPerDay = new HashMap<>();
+    private int received;
+    private int accepted;
+
+    ChunkedSampleWriter(StepService stepService, TransactionTemplate tx, User user,
+                        StepSample.Provider provider, int chunkSize) {
+        this.stepService = stepService;
+        this.tx = tx;
+        this.user = user;
+        this.provider = provider;
+        this.zone = StepService.userZone(user);
+        this.minStartedAt = stepService.retainedFrom();
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunk = new ArrayList<>(this.chunkSize);
+    }
+
+    void add(StepSampleDto dto) {
+        received++;
+        StepSample s = StepService.toSample(user, provider, dto, minStartedAt, maxEndedAt);
+        if (s == null) return;
+        chunk.add(s);
+        if (chunk.size() >= chunkSize) flush();
+    }
+
+    int received() {
+        return received;
+    }
+
+    /**
+     * Writes the remaining partial chunk and returns the summary for the whole upload.
+     */
+    UploadStepsResponse finish() {
+        flush();
+        return stepService.toResponse(user, accepted, received - accepted, addedPerDay);
+    }
+
+    private void flush() {
+        if (chunk.isEmpty()) return;
+        // Counted only once the chunk has committed; a rolled-back chunk must not show up in the summary
+        Map<LocalDate, Long> chunkAdded = new HashMap<>();
+        Integer inserted = tx.execute(status -> stepService.writeSamples(user, zone, chunk, chunkAdded));
+        chunkAdded.forEach((date, steps) -> addedPerDay.merge(date, steps, Long::sum));
+        accepted += inserted == null ? 0 : inserted;
+        chunk.clear();
+    }
+}
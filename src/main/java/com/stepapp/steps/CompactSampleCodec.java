@@ -0,0 +1,215 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.dto.StepSampleDto;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary wire format for step uploads ({@value #MEDIA_TYPE}).
+ *
+ * <pre>
+ * header : "STP1" provider:str sourceCount:varint source:str* baseEpochMilli:zigzag
+ * sample : startDelta:zigzag duration:varint steps:varint sourceRef:varint externalId:str
+ * str    : byteLength:varint utf8-bytes   (length 0 = null/absent)
+ * </pre>
+ * Samples follow the header until end of stream. Start times are milliseconds since the previous
+ * sample's start (the first one relative to baseEpochMilli), durations are in milliseconds, and
+ * sourceRef is 0 for no source or 1 + index into the per-batch source dictionary.
+ * Decoded timestamps are in UTC; only the instant matters for aggregation. Milliseconds keep the
+ * instants JSON clients send, so a sample stored from one format matches the same sample re-sent in the other.
+ * <p>
+ * Payloads come from clients, so every decoded value is range-checked: anything malformed is an
+ * {@link IllegalArgumentException}, and truncation an {@link EOFException}.
+ */
+final class CompactSampleCodec {
+
+    static final String MEDIA_TYPE = "application/vnd.stepapp.samples.v1+binary";
+
+    private static final byte[] MAGIC = {'S', 'T', 'P', '1'};
+    private static final int MAX_STRING_BYTES = 1024;
+    private static final int MAX_SOURCES = 4096;
+    // Sample times must fall in [1970, 9999]; far beyond any valid upload, yet every bound fits OffsetDateTime
+    private static final long MAX_EPOCH_MILLI = 253_402_300_799_999L;
+
+    private CompactSampleCodec() {}
+
+    /**
+     * Streaming decoder: reads the header eagerly, then one sample per {@link #next()} call.
+     */
+    static final class Decoder {
+
+        private final InputStream in;
+        private final String provider;
+        private final String[] sources;
+        private long prevStart;
+
+        Decoder(InputStream in) throws IOException {
+            this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024);
+            byte[] magic = this.in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IllegalArgumentException("Not a compact step payload");
+            }
+            this.provider = readString(this.in);
+            if (provider == null) throw new IllegalArgumentException("Missing provider");
+            int sourceCount = readVarInt(this.in);
+            if (sourceCount < 0 || sourceCount > MAX_SOURCES) {
+                throw new IllegalArgumentException("Too many sources in dictionary: " + sourceCount);
+            }
+            this.sources = new String[sourceCount];
+            for (int i = 0; i < sourceCount; i++) sources[i] = readString(this.in);
+            this.prevStart = checkEpochMilli(zigZagDecode(readVarLong(this.in)));
+        }
+
+        String provider() {
+            return provider;
+        }
+
+        /**
+         * Returns the next sample, or null at end of stream.
+         */
+        StepSampleDto next() throws IOException {
+            int first = in.read();
+            if (first < 0) return null;
+
+            long delta = zigZagDecode(readVarLong(in, first));
+            // prevStart is within range, so only a delta beyond it can overflow, and that fails the check
+            long start = checkEpochMilli(prevStart + delta);
+            prevStart = start;
+            long duration = readVarLong(in);
+            if (duration < 0 || duration > MAX_EPOCH_MILLI - start) {
+                throw new IllegalArgumentException("Sample duration out of range: " + duration);
+            }
+            int steps = readVarInt(in);
+            int sourceRef = readVarInt(in);
+            if (sourceRef < 0 || sourceRef > sources.length) {
+                throw new IllegalArgumentException("Unknown source reference: " + sourceRef);
+            }
+            String externalId = readString(in);
+
+            OffsetDateTime startedAt = OffsetDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneOffset.UTC);
+            return new StepSampleDto(
+                    externalId,
+                    startedAt,
+                    OffsetDateTime.ofInstant(Instant.ofEpochMilli(start + duration), ZoneOffset.UTC),
+                    steps,
+                    sourceRef == 0 ? null : sources[sourceRef - 1]
+            );
+        }
+    }
+
+    /**
+     * Encodes samples in this format. Used by tests, benchmarks and reference clients.
+     */
+    static byte[] encode(String provider, List<StepSampleDto> samples) {
+        Map<String, Integer> dict = new HashMap<>();
+        List<String> sources = new ArrayList<>();
+        for (var s : samples) {
+            if (s.source() != null && !dict.containsKey(s.source())) {
+                dict.put(s.source(), sources.size() + 1);
+                sources.add(s.source());
+            }
+        }
+
+        try {
+            var out = new ByteArrayOutputStream(16 + samples.size() * 8);
+            out.write(MAGIC);
+            writeString(out, provider);
+            writeVarLong(out, sources.size());
+            for (String src : sources) writeString(out, src);
+
+            long prev = samples.isEmpty() ? 0 : samples.get(0).startedAt().toInstant().toEpochMilli();
+            writeVarLong(out, zigZagEncode(prev));
+            for (var s : samples) {
+                long start = s.startedAt().toInstant().toEpochMilli();
+                writeVarLong(out, zigZagEncode(start - prev));
+                prev = start;
+                writeVarLong(out, s.endedAt().toInstant().toEpochMilli() - start);
+                writeVarLong(out, s.steps());
+                writeVarLong(out, s.source() == null ? 0 : dict.get(s.source()));
+                writeString(out, s.externalId());
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // --- varint / zigzag primitives (LEB128, as in protobuf) ---
+
+    static long zigZagEncode(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long zigZagDecode(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void writeVarLong(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Truncated compact payload");
+        return readVarLong(in, b);
+    }
+
+    private static long readVarLong(InputStream in, int firstByte) throws IOException {
+        long result = firstByte & 0x7F;
+        int b = firstByte;
+        int shift = 7;
+        while ((b & 0x80) != 0) {
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint");
+            b = in.read();
+            if (b < 0) throw new EOFException("Truncated compact payload");
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return result;
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        long v = readVarLong(in);
+        if (v < 0 || v > Integer.MAX_VALUE) throw new IllegalArgumentException("Value out of range: " + v);
+        return (int) v;
+    }
+
+    private static long checkEpochMilli(long epochMilli) {
+        if (epochMilli < 0 || epochMilli > MAX_EPOCH_MILLI) {
+            throw new IllegalArgumentException("Sample start out of range: " + epochMilli);
+        }
+        return epochMilli;
+    }
+
+    private static void writeString(OutputStream out, String s) throws IOException {
+        if (s == null || s.isEmpty()) {
+            out.write(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        int len = readVarInt(in);
+        if (len == 0) return null;
+        if (len > MAX_STRING_BYTES) throw new IllegalArgumentException("String too long: " + len);
+        byte[] bytes = in.readNBytes(len);
+        if (bytes.length < len) throw new EOFException("Truncated compact payload");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
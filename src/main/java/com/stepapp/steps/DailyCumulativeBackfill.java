@@ -0,0 +1,32 @@
+package com.stepapp.steps;
+
+import com.stepapp.common.db.StartupMigrations;
+import com.stepapp.common.db.StartupMigrations.Migration;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills daily_steps.steps_cumulative for rows written before the column existed, once (see
+ * {@link StartupMigrations}); the scan for NULL running totals only runs while the marker is missing.
+ * Running totals are recomputed from a snapshot, so daily_steps is locked: an upload committing meanwhile would
+ * otherwise have its new total overwritten.
+ */
+@Component
+class DailyCumulativeBackfill {
+
+    private static final long ADVISORY_LOCK_KEY = 0x4375_6D75_6C42_6B66L; // "CumulBkf"
+
+    private final StartupMigrations migrations;
+    private final DailyStepsRepository dailyRepo;
+
+    DailyCumulativeBackfill(StartupMigrations migrations, DailyStepsRepository dailyRepo) {
+        this.migrations = migrations;
+        this.dailyRepo = dailyRepo;
+    }
+
+    @PostConstruct
+    void backfill() {
+        migrations.runOnce(new Migration("daily-steps-cumulative", ADVISORY_LOCK_KEY, "daily_steps",
+                "SELECT EXISTS (SELECT 1 FROM daily_steps WHERE steps_cumulative IS NULL)", dailyRepo::backfillCumulative));
+    }
+}
@@ -0,0 +1,94 @@
+package com.stepapp.steps;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-date {@link StepsHistogram}s for percentile answers.
+ * <p>
+ * Active dates use the histogram maintained inside the global leaderboard board, so uploads move it
+ * incrementally with the same ordering guarantees. Those boards are built from daily_steps when the
+ * application starts. Older dates barely change; their histogram is built from the date's leaderboard snapshot,
+ * or from one scan of daily_steps before it is finalized, and kept in a small LRU for {@code past-ttl}.
+ */
+@Component
+@Slf4j
+class DailyPercentiles {
+
+    private record PastHistogram(StepsHistogram histogram, long builtAtNanos) {}
+
+    private final GlobalDailyLeaderboard globalLeaderboard;
+    private final DailyStepsRepository dailyRepo;
+    private final LeaderboardSnapshots snapshots;
+    private final TransactionTemplate readTx;
+    private final boolean warmOnStartup;
+    private final long pastTtlNanos;
+    private final int fetchSize;
+    private final Map<LocalDate, PastHistogram> past;
+
+    DailyPercentiles(
+            GlobalDailyLeaderboard globalLeaderboard,
+            DailyStepsRepository dailyRepo,
+            LeaderboardSnapshots snapshots,
+            PlatformTransactionManager transactionManager,
+            @Value("${steps.percentile.warm-on-startup:true}") boolean warmOnStartup,
+            @Value("${steps.percentile.past-dates:64}") int pastDates,
+            @Value("${steps.percentile.past-ttl:PT1H}") Duration pastTtl,
+            @Value("${steps.leaderboard.global.seed-fetch-size:10000}") int fetchSize
+    ) {
+        this.globalLeaderboard = globalLeaderboard;
+        this.dailyRepo = dailyRepo;
+        this.snapshots = snapshots;
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setReadOnly(true);
+        this.warmOnStartup = warmOnStartup;
+        this.pastTtlNanos = pastTtl.toNanos();
+        this.fetchSize = fetchSize;
+        this.past = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalDate, PastHistogram> eldest) {
+                return size() > pastDates;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void warmUp() {
+        if (!warmOnStartup) return;
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        // "Today" of every timezone is one of these
+        for (LocalDate date = today.minusDays(1); !date.isAfter(today.plusDays(1)); date = date.plusDays(1)) {
+            int users = globalLeaderboard.board(date).size();
+            log.info("Rebuilt step distribution for {} from {} daily totals", date, users);
+        }
+    }
+
+    StepsHistogram histogram(LocalDate date) {
+        if (globalLeaderboard.isActive(date)) return globalLeaderboard.board(date).histogram();
+
+        synchronized (past) {
+            PastHistogram h = past.get(date);
+            if (h != null && System.nanoTime() - h.builtAtNanos() <= pastTtlNanos) return h.histogram();
+        }
+        StepsHistogram built = snapshots.global(date).map(RankedSnapshot::histogram).orElseGet(() -> {
+            StepsHistogram h = new StepsHistogram();
+            readTx.executeWithoutResult(status -> dailyRepo.forEachTotalOn(date, fetchSize, (userId, steps) -> h.add(steps)));
+            return h;
+        });
+        synchronized (past) {
+            past.put(date, new PastHistogram(built, System.nanoTime()));
+        }
+        return built;
+    }
+}
@@ -10,6 +10,9 @@ import java.time.OffsetDateTime;
 @Entity
 @Table(name = "daily_steps", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"user_id", "date"})
+}, indexes = {
+        // Leaderboard order of a date, for keyset pages
+        @Index(name = "idx_daily_steps_date_steps_user", columnList = "date, steps_total DESC, user_id")
 })
 @Getter
 @Setter
@@ -29,9 +32,17 @@ public class DailySteps {
     @Column(name = "date", nullable = false)
     private LocalDate date;
 
+    @Builder.Default
     @Column(name = "steps_total", nullable = false)
     private Long stepsTotal = 0L;
 
+    /**
+     * Running total of the user's steps through this date (prefix sum over the user's rows), so the total of
+     * any date range is the difference of two rows. Maintained by {@link DailyStepsBulkRepository}.
+     */
+    @Column(name = "steps_cumulative")
+    private Long stepsCumulative;
+
     @Column(name = "updated_at", nullable = false)
     private OffsetDateTime updatedAt;
 
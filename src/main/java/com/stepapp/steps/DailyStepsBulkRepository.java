@@ -0,0 +1,135 @@
+package com.stepapp.steps;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Atomic write path for daily aggregates.
+ */
+public interface DailyStepsBulkRepository {
+
+    /**
+     * Adds the given per-date increments to the user's daily totals in a single
+     * INSERT ... ON CONFLICT DO UPDATE statement, creating missing rows.
+     * Safe under concurrent uploads for the same user and date.
+     * Returns the resulting totals of the touched dates.
+     * <p>
+     * Also refreshes steps_cumulative of the user's rows from the earliest touched date on (one row for uploads of
+     * today); callers must hold the user's advisory lock so these refreshes are serialized.
+     */
+    Map<LocalDate, Long> addToTotals(Long userId, Map<LocalDate, Long> increments);
+
+    /**
+     * The user's totals between dates (inclusive), keyed by date; days without a row are absent.
+     */
+    Map<LocalDate, Long> findTotalsBetween(Long userId, LocalDate from, LocalDate to);
+
+    /**
+     * Totals of the given users on one date, keyed by user id; users without a row are absent.
+     */
+    Map<Long, Long> findTotalsOn(LocalDate date, Collection<Long> userIds);
+
+    /**
+     * A leaderboard entry. Leaderboard pages are keyset pages ordered by (steps desc, userId asc): the
+     * {@code limit} entries strictly after (afterSteps, afterUserId); pass Long.MAX_VALUE / Long.MIN_VALUE for
+     * the first page. Users without a row on the date (in the range) are not listed.
+     */
+    record NamedTotal(long userId, String username, long stepsTotal) {}
+
+    /**
+     * Friends leaderboard page in one statement: the user's friends (a range scan of friendships) plus the user,
+     * joined to their totals of the date.
+     */
+    List<NamedTotal> findFriendsPageOn(Long userId, LocalDate date, long afterSteps, long afterUserId, int limit);
+
+    /**
+     * Group leaderboard page in one statement: totals of the date, walked in index order, joined to group_members.
+     */
+    List<NamedTotal> findGroupPageOn(Long groupId, LocalDate date, long afterSteps, long afterUserId, int limit);
+
+    /**
+     * Global leaderboard page of a date, walked in (date, steps_total DESC, user_id) index order.
+     */
+    List<NamedTotal> findPageOn(LocalDate date, long afterSteps, long afterUserId, int limit);
+
+    /**
+     * Friends leaderboard page over a date range (inclusive): each member's range total is the difference of two
+     * steps_cumulative rows found by index probes, so the cost per member does not depend on the range length.
+     */
+    List<NamedTotal> findFriendsPageBetween(Long userId, LocalDate from, LocalDate to,
+                                            long afterSteps, long afterUserId, int limit);
+
+    /**
+     * Group leaderboard page over a date range (inclusive), computed like {@link #findFriendsPageBetween}.
+     */
+    List<NamedTotal> findGroupPageBetween(Long groupId, LocalDate from, LocalDate to,
+                                          long afterSteps, long afterUserId, int limit);
+
+    /**
+     * Fills steps_cumulative for users that have rows without it (rows written before the column existed).
+     * Returns the number of updated rows.
+     */
+    int backfillCumulative();
+
+    @FunctionalInterface
+    interface TotalConsumer {
+        void accept(long userId, long stepsTotal);
+    }
+
+    /**
+     * Streams all totals of one date, fetching {@code fetchSize} rows per round trip.
+     * Requires an open transaction (the PostgreSQL driver only uses a cursor outside autocommit).
+     */
+    void forEachTotalOn(LocalDate date, int fetchSize, TotalConsumer action);
+
+    /**
+     * Streams the totals of one date of all members of a group.
+     */
+    void forEachGroupTotalOn(Long groupId, LocalDate date, int fetchSize, TotalConsumer action);
+
+    /**
+     * Like {@link #forEachTotalOn}, in leaderboard order (steps desc, user id asc).
+     */
+    void forEachRankedOn(LocalDate date, int fetchSize, TotalConsumer action);
+
+    @FunctionalInterface
+    interface GroupTotalConsumer {
+        void accept(long groupId, long userId, long stepsTotal);
+    }
+
+    /**
+     * Streams the totals of one date of every group's members, group by group, each group in leaderboard order.
+     * Groups without a total that day are skipped. Requires an open transaction.
+     */
+    void forEachGroupRankedOn(LocalDate date, int fetchSize, GroupTotalConsumer action);
+
+    /**
+     * Version of a user's daily totals (see {@link DailyStepsVersion}); {@code updatedAt} is null at version 0.
+     */
+    record Version(long version, OffsetDateTime updatedAt) {}
+
+    /**
+     * Increments the version of the user's daily totals and returns the new one. Every transaction that changes
+     * the user's daily rows calls it once, holding the user's advisory lock.
+     */
+    long bumpVersion(Long userId);
+
+    /**
+     * Current version of the user's daily totals, from one primary-key lookup.
+     */
+    Version findVersion(Long userId);
+
+    /**
+     * Replaces all of the user's daily totals dated {@code from} or later with {@code totals}.
+     * Atomic only within the caller's transaction.
+     */
+    void replaceTotalsFrom(Long userId, LocalDate from, Map<LocalDate, Long> totals);
+
+    /**
+     * Replaces all of the user's daily totals with {@code totals}. Atomic only within the caller's transaction.
+     */
+    void replaceAllTotals(Long userId, Map<LocalDate, Long> totals);
+}
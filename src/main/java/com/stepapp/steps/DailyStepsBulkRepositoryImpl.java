@@ -0,0 +1,303 @@
+package com.stepapp.steps;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+@RequiredArgsConstructor
+class DailyStepsBulkRepositoryImpl implements DailyStepsBulkRepository {
+
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO daily_steps (user_id, date, steps_total, updated_at)
+            VALUES\s""";
+
+    private static final String UPSERT_SUFFIX = """
+             ON CONFLICT (user_id, date) DO UPDATE
+            SET steps_total = daily_steps.steps_total + EXCLUDED.steps_total,
+                updated_at = EXCLUDED.updated_at
+            RETURNING date, steps_total""";
+
+    // Rows per upsert statement when replacing a user's whole history (bind-parameter limit)
+    private static final int REPLACE_CHUNK_SIZE = 1000;
+
+    // Prefix sums from the first changed date on; the base is the running total of the previous row
+    private static final String REFRESH_CUMULATIVE = """
+            UPDATE daily_steps d
+            SET steps_cumulative = c.cumulative
+            FROM (SELECT id,
+                         COALESCE((SELECT p.steps_cumulative FROM daily_steps p
+                                   WHERE p.user_id = ? AND p.date < ? ORDER BY p.date DESC LIMIT 1), 0)
+                         + SUM(steps_total) OVER (ORDER BY date) AS cumulative
+                  FROM daily_steps WHERE user_id = ? AND date >= ?) c
+            WHERE d.id = c.id AND d.steps_cumulative IS DISTINCT FROM c.cumulative""";
+
+    private static final String BACKFILL_CUMULATIVE = """
+            UPDATE daily_steps d
+            SET steps_cumulative = c.cumulative
+            FROM (SELECT id, SUM(steps_total) OVER (PARTITION BY user_id ORDER BY date) AS cumulative
+                  FROM daily_steps
+                  WHERE user_id IN (SELECT user_id FROM daily_steps WHERE steps_cumulative IS NULL)) c
+            WHERE d.id = c.id AND d.steps_cumulative IS DISTINCT FROM c.cumulative""";
+
+    private static final String FRIEND_MEMBERS = """
+            WITH members AS (
+                SELECT friend_id AS user_id FROM friendships WHERE user_id = ?
+                UNION ALL
+                SELECT ?)
+            """;
+
+    private static final String GROUP_MEMBERS = """
+            WITH members AS (SELECT user_id FROM group_members WHERE group_id = ?)
+            """;
+
+    // Pages are keyset pages: rows strictly after (steps, user_id) in (steps desc, user_id asc) order.
+    // On a single date the first conjunct bounds the scan of the (date, steps_total DESC, user_id) index, so a
+    // deep page starts where it is instead of skipping over earlier rows.
+
+    // Range total = running total at the last row <= to minus the one at the last row < from; every page
+    // computes the members' totals (two index probes each) and keeps those after the cursor
+    private static final String RANGE_PAGE = """
+            SELECT user_id, username, total FROM (
+                SELECT m.user_id, u.username, hi.steps_cumulative - COALESCE(lo.steps_cumulative, 0) AS total
+                FROM members m
+                JOIN users u ON u.id = m.user_id
+                JOIN LATERAL (SELECT date, steps_cumulative FROM daily_steps
+                              WHERE user_id = m.user_id AND date <= ? ORDER BY date DESC LIMIT 1) hi ON hi.date >= ?
+                LEFT JOIN LATERAL (SELECT steps_cumulative FROM daily_steps
+                                   WHERE user_id = m.user_id AND date < ? ORDER BY date DESC LIMIT 1) lo ON true) r
+            WHERE total <= ? AND (total < ? OR user_id > ?)
+            ORDER BY total DESC, user_id
+            LIMIT ?""";
+
+    private static final String FRIENDS_PAGE = FRIEND_MEMBERS + """
+            SELECT d.user_id, u.username, d.steps_total
+            FROM members m
+            JOIN daily_steps d ON d.user_id = m.user_id AND d.date = ?
+            JOIN users u ON u.id = m.user_id
+            WHERE d.steps_total <= ? AND (d.steps_total < ? OR d.user_id > ?)
+            ORDER BY d.steps_total DESC, d.user_id
+            LIMIT ?""";
+
+    private static final String GROUP_PAGE = """
+            SELECT d.user_id, u.username, d.steps_total
+            FROM daily_steps d
+            JOIN group_members gm ON gm.user_id = d.user_id AND gm.group_id = ?
+            JOIN users u ON u.id = d.user_id
+            WHERE d.date = ? AND d.steps_total <= ? AND (d.steps_total < ? OR d.user_id > ?)
+            ORDER BY d.steps_total DESC, d.user_id
+            LIMIT ?""";
+
+    private static final String GLOBAL_PAGE = """
+            SELECT d.user_id, u.username, d.steps_total
+            FROM daily_steps d
+            JOIN users u ON u.id = d.user_id
+            WHERE d.date = ? AND d.steps_total <= ? AND (d.steps_total < ? OR d.user_id > ?)
+            ORDER BY d.steps_total DESC, d.user_id
+            LIMIT ?""";
+
+    private static final RowMapper<NamedTotal> NAMED_TOTAL =
+            (rs, rowNum) -> new NamedTotal(rs.getLong(1), rs.getString(2), rs.getLong(3));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Map<LocalDate, Long> addToTotals(Long userId, Map<LocalDate, Long> increments) {
+        if (increments.isEmpty()) return Map.of();
+
+        // Rows are locked in date order so two uploads touching the same days can't deadlock
+        TreeMap<LocalDate, Long> ordered = new TreeMap<>(increments);
+        Map<LocalDate, Long> totals = upsert(userId, ordered);
+        refreshCumulative(userId, ordered.firstKey());
+        return totals;
+    }
+
+    private Map<LocalDate, Long> upsert(Long userId, SortedMap<LocalDate, Long> ordered) {
+        if (ordered.isEmpty()) return Map.of();
+        OffsetDateTime now = OffsetDateTime.now();
+
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        List<Object> args = new ArrayList<>(ordered.size() * 4);
+        for (var e : ordered.entrySet()) {
+            if (!args.isEmpty()) sql.append(',');
+            sql.append("(?,?,?,?)");
+            args.add(userId);
+            args.add(e.getKey());
+            args.add(e.getValue());
+            args.add(now);
+        }
+        sql.append(UPSERT_SUFFIX);
+
+        Map<LocalDate, Long> totals = new HashMap<>(ordered.size() * 2);
+        jdbcTemplate.query(sql.toString(),
+                (RowCallbackHandler) rs -> totals.put(rs.getObject(1, LocalDate.class), rs.getLong(2)),
+                args.toArray());
+        return totals;
+    }
+
+    private void refreshCumulative(Long userId, LocalDate from) {
+        jdbcTemplate.update(REFRESH_CUMULATIVE, userId, from, userId, from);
+    }
+
+    @Override
+    public int backfillCumulative() {
+        return jdbcTemplate.update(BACKFILL_CUMULATIVE);
+    }
+
+    @Override
+    public Map<LocalDate, Long> findTotalsBetween(Long userId, LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> totals = new HashMap<>();
+        jdbcTemplate.query("SELECT date, steps_total FROM daily_steps WHERE user_id = ? AND date BETWEEN ? AND ?",
+                (RowCallbackHandler) rs -> totals.put(rs.getObject(1, LocalDate.class), rs.getLong(2)),
+                userId, from, to);
+        return totals;
+    }
+
+    @Override
+    public Map<Long, Long> findTotalsOn(LocalDate date, Collection<Long> userIds) {
+        if (userIds.isEmpty()) return Map.of();
+        Map<Long, Long> totals = new HashMap<>(userIds.size() * 2);
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT user_id, steps_total FROM daily_steps WHERE date = ? AND user_id = ANY(?)");
+            ps.setObject(1, date);
+            ps.setArray(2, con.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        }, (RowCallbackHandler) rs -> totals.put(rs.getLong(1), rs.getLong(2)));
+        return totals;
+    }
+
+    @Override
+    public List<NamedTotal> findFriendsPageOn(Long userId, LocalDate date, long afterSteps, long afterUserId, int limit) {
+        return jdbcTemplate.query(FRIENDS_PAGE, NAMED_TOTAL,
+                userId, userId, date, afterSteps, afterSteps, afterUserId, limit);
+    }
+
+    @Override
+    public List<NamedTotal> findGroupPageOn(Long groupId, LocalDate date, long afterSteps, long afterUserId, int limit) {
+        return jdbcTemplate.query(GROUP_PAGE, NAMED_TOTAL,
+                groupId, date, afterSteps, afterSteps, afterUserId, limit);
+    }
+
+    @Override
+    public List<NamedTotal> findPageOn(LocalDate date, long afterSteps, long afterUserId, int limit) {
+        return jdbcTemplate.query(GLOBAL_PAGE, NAMED_TOTAL,
+                date, afterSteps, afterSteps, afterUserId, limit);
+    }
+
+    @Override
+    public List<NamedTotal> findFriendsPageBetween(Long userId, LocalDate from, LocalDate to,
+                                                   long afterSteps, long afterUserId, int limit) {
+        return jdbcTemplate.query(FRIEND_MEMBERS + RANGE_PAGE, NAMED_TOTAL,
+                userId, userId, to, from, from, afterSteps, afterSteps, afterUserId, limit);
+    }
+
+    @Override
+    public List<NamedTotal> findGroupPageBetween(Long groupId, LocalDate from, LocalDate to,
+                                                 long afterSteps, long afterUserId, int limit) {
+        return jdbcTemplate.query(GROUP_MEMBERS + RANGE_PAGE, NAMED_TOTAL,
+                groupId, to, from, from, afterSteps, afterSteps, afterUserId, limit);
+    }
+
+    @Override
+    public void forEachGroupTotalOn(Long groupId, LocalDate date, int fetchSize, TotalConsumer action) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT d.user_id, d.steps_total
+                    FROM group_members gm
+                    JOIN daily_steps d ON d.user_id = gm.user_id AND d.date = ?
+                    WHERE gm.group_id = ?""");
+            ps.setObject(1, date);
+            ps.setLong(2, groupId);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getLong(1), rs.getLong(2)));
+    }
+
+    @Override
+    public void forEachTotalOn(LocalDate date, int fetchSize, TotalConsumer action) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT user_id, steps_total FROM daily_steps WHERE date = ?");
+            ps.setObject(1, date);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getLong(1), rs.getLong(2)));
+    }
+
+    @Override
+    public void forEachRankedOn(LocalDate date, int fetchSize, TotalConsumer action) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT user_id, steps_total FROM daily_steps WHERE date = ?
+                    ORDER BY steps_total DESC, user_id""");
+            ps.setObject(1, date);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getLong(1), rs.getLong(2)));
+    }
+
+    @Override
+    public void forEachGroupRankedOn(LocalDate date, int fetchSize, GroupTotalConsumer action) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT gm.group_id, d.user_id, d.steps_total
+                    FROM daily_steps d
+                    JOIN group_members gm ON gm.user_id = d.user_id
+                    WHERE d.date = ?
+                    ORDER BY gm.group_id, d.steps_total DESC, d.user_id""");
+            ps.setObject(1, date);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+    }
+
+    @Override
+    public long bumpVersion(Long userId) {
+        Long version = jdbcTemplate.queryForObject("""
+                        INSERT INTO daily_steps_versions (user_id, version, updated_at) VALUES (?, 1, ?)
+                        ON CONFLICT (user_id) DO UPDATE
+                        SET version = daily_steps_versions.version + 1, updated_at = EXCLUDED.updated_at
+                        RETURNING version""",
+                Long.class, userId, OffsetDateTime.now());
+        return version;
+    }
+
+    @Override
+    public Version findVersion(Long userId) {
+        List<Version> found = jdbcTemplate.query(
+                "SELECT version, updated_at FROM daily_steps_versions WHERE user_id = ?",
+                (rs, rowNum) -> new Version(rs.getLong(1), rs.getObject(2, OffsetDateTime.class)),
+                userId);
+        return found.isEmpty() ? new Version(0, null) : found.get(0);
+    }
+
+    @Override
+    public void replaceTotalsFrom(Long userId, LocalDate from, Map<LocalDate, Long> totals) {
+        jdbcTemplate.update("DELETE FROM daily_steps WHERE user_id = ? AND date >= ?", userId, from);
+        insertAndRefresh(userId, from, totals);
+    }
+
+    @Override
+    public void replaceAllTotals(Long userId, Map<LocalDate, Long> totals) {
+        jdbcTemplate.update("DELETE FROM daily_steps WHERE user_id = ?", userId);
+        if (!totals.isEmpty()) insertAndRefresh(userId, Collections.min(totals.keySet()), totals);
+    }
+
+    private void insertAndRefresh(Long userId, LocalDate from, Map<LocalDate, Long> totals) {
+        TreeMap<LocalDate, Long> chunk = new TreeMap<>();
+        for (var e : new TreeMap<>(totals).entrySet()) {
+            chunk.put(e.getKey(), e.getValue());
+            if (chunk.size() == REPLACE_CHUNK_SIZE) {
+                upsert(userId, chunk);
+                chunk = new TreeMap<>();
+            }
+        }
+        upsert(userId, chunk);
+        refreshCumulative(userId, from);
+    }
+}
@@ -1,7 +1,6 @@
 package com.stepapp.steps;
 
 import com.stepapp.user.User;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
@@ -9,14 +8,14 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
-public interface DailyStepsRepository extends JpaRepository<DailySteps, Long> {
+public interface DailyStepsRepository extends JpaRepository<DailySteps, Long>, DailyStepsBulkRepository {
     Optional<DailySteps> findByUserAndDate(User user, LocalDate date);
     List<DailySteps> findAllByUserAndDateBetween(User user, LocalDate from, LocalDate to);
 
-    // For leaderboards: fetch top entries for a set of users
-    @Query("SELECT d FROM DailySteps d WHERE d.date = :date AND d.user IN :users ORDER BY d.stepsTotal DESC")
-    List<DailySteps> findTopByDateAndUsers(LocalDate date, List<User> users, Pageable pageable);
+    @Query("SELECT COALESCE(SUM(d.stepsTotal), 0) FROM DailySteps d WHERE d.user = :user AND d.date BETWEEN :from AND :to")
+    long sumByUserAndDateBetween(User user, LocalDate from, LocalDate to);
 
-    @Query("SELECT d FROM DailySteps d WHERE d.date = :date ORDER BY d.stepsTotal DESC")
-    List<DailySteps> findTopByDate(LocalDate date, Pageable pageable);
+    long countByDate(LocalDate date);
+
+    long countByDateAndStepsTotalGreaterThan(LocalDate date, Long stepsTotal);
 }
@@ -0,0 +1,31 @@
+package com.stepapp.steps;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Version of one user's daily totals, bumped by every transaction that changes them (uploads and timezone
+ * re-bucketing, under the user's advisory lock). Serves as the validator of /daily and /history and tells
+ * {@link DailyTotalsCache} whether a cached window is current. Users without a row are at version 0.
+ */
+@Entity
+@Table(name = "daily_steps_versions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DailyStepsVersion {
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+}
@@ -0,0 +1,280 @@
+package com.stepapp.steps;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded in-memory cache of per-user daily totals. Each user has at most one window of consecutive days,
+ * stored as a primitive {@code long[]} ({@link #MISSING} marks days without a daily_steps row).
+ * Windows are evicted LRU beyond {@code max-users} and expire after {@code ttl}. The cache is split into
+ * {@value #SEGMENTS} segments by user id, each with its own lock and LRU order (holding an even share of
+ * {@code max-users}), so reads of different users rarely contend.
+ * <p>
+ * Every window is tagged with the {@link DailyStepsVersion} read before its rows were loaded, and a read only
+ * hits a window tagged with the version the caller just read from the database, so writes of any node are
+ * visible to the next read. Writes of this node go through: {@link #recordWrite} patches the window with an
+ * upload's increments once its transaction commits, and moves its tag to the upload's version if the window was
+ * at the version just before; otherwise the window is dropped. A window is only stored when no write of that
+ * user was in flight on this node while it was loaded; a load racing a commit is returned but not cached, so
+ * patches are never applied twice or lost.
+ */
+@Component
+class DailyTotalsCache {
+
+    /** Marker for "no row for this day", distinct from a total of 0. */
+    static final long MISSING = Long.MIN_VALUE;
+
+    static final int SEGMENTS = 64;
+    // Write tracking is striped by user id so its memory stays fixed; collisions only cost a skipped store
+    private static final int STRIPES_PER_SEGMENT = 16;
+    private static final long WINDOW_OVERHEAD_BYTES = 64;
+
+    interface RangeLoader {
+        Map<LocalDate, Long> load(LocalDate from, LocalDate to);
+    }
+
+    private record Window(long version, long firstDay, long[] totals, long loadedAtNanos) {
+        boolean covers(long from, long to) {
+            return from >= firstDay && to < firstDay + totals.length;
+        }
+
+        long bytes() {
+            return WINDOW_OVERHEAD_BYTES + 8L * totals.length;
+        }
+    }
+
+    /** One lock's share of the cache; all fields are guarded by the segment's monitor. */
+    private final class Segment {
+        final Map<Long, Window> windows;
+        final int[] inflightWrites = new int[STRIPES_PER_SEGMENT];
+        final long[] completedWrites = new long[STRIPES_PER_SEGMENT];
+
+        Segment(int maxUsers) {
+            this.windows = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Window> eldest) {
+                    if (size() <= maxUsers) return false;
+                    bytesUsed.addAndGet(-eldest.getValue().bytes());
+                    sizeEvictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        Window live(Long userId) {
+            Window w = windows.get(userId);
+            if (w != null && System.nanoTime() - w.loadedAtNanos() > ttlNanos) {
+                remove(userId);
+                expirations.increment();
+                return null;
+            }
+            return w;
+        }
+
+        void patch(Long userId, long version, Map<LocalDate, Long> increments) {
+            Window w = windows.get(userId);
+            if (w == null) return;
+            if (w.version() != version - 1) {
+                // The window misses a write of another node (or is already past this one); it can't be patched
+                remove(userId);
+                return;
+            }
+            long[] totals = w.totals().clone();
+            for (var e : increments.entrySet()) {
+                long i = e.getKey().toEpochDay() - w.firstDay();
+                if (i < 0 || i >= totals.length) continue;
+                totals[(int) i] = (totals[(int) i] == MISSING ? 0 : totals[(int) i]) + e.getValue();
+            }
+            windows.put(userId, new Window(version, w.firstDay(), totals, w.loadedAtNanos()));
+        }
+
+        void put(Long userId, Window w) {
+            Window old = windows.put(userId, w);
+            if (old != null) bytesUsed.addAndGet(-old.bytes());
+            bytesUsed.addAndGet(w.bytes());
+        }
+
+        void remove(Long userId) {
+            Window old = windows.remove(userId);
+            if (old != null) bytesUsed.addAndGet(-old.bytes());
+        }
+
+        /** Snapshot taken before a load; -1 when a write of the user's stripe is in flight. */
+        long writeToken(Long userId) {
+            int s = stripe(userId);
+            return inflightWrites[s] > 0 ? -1 : completedWrites[s];
+        }
+
+        boolean mayStore(Long userId, long token) {
+            int s = stripe(userId);
+            return token >= 0 && inflightWrites[s] == 0 && completedWrites[s] == token;
+        }
+    }
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxRangeDays;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLong bytesUsed = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expirations;
+
+    DailyTotalsCache(
+            MeterRegistry meterRegistry,
+            @Value("${steps.daily-cache.enabled:true}") boolean enabled,
+            @Value("${steps.daily-cache.max-users:50000}") int maxUsers,
+            @Value("${steps.daily-cache.max-range-days:400}") int maxRangeDays,
+            @Value("${steps.daily-cache.ttl:PT5M}") Duration ttl
+    ) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.maxRangeDays = maxRangeDays;
+        int perSegment = Math.max(1, (maxUsers + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(perSegment);
+
+        this.hits = Counter.builder("steps.daily.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("steps.daily.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictions = Counter.builder("steps.daily.cache.evictions").tag("cause", "size").register(meterRegistry);
+        this.expirations = Counter.builder("steps.daily.cache.evictions").tag("cause", "ttl").register(meterRegistry);
+        Gauge.builder("steps.daily.cache.hit.ratio", this, DailyTotalsCache::hitRatio).register(meterRegistry);
+        Gauge.builder("steps.daily.cache.users", this, DailyTotalsCache::userCount).register(meterRegistry);
+        Gauge.builder("steps.daily.cache.memory", bytesUsed, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Totals of one user for every day in [from, to] (index 0 = from), {@link #MISSING} where no row exists.
+     * {@code version} is the user's current version, read before calling; only a window at that version hits.
+     * On a miss the loader is called without holding any lock; if the user already has a window close by,
+     * the union is loaded so consecutive requests for different ranges keep hitting.
+     */
+    long[] getRange(Long userId, long version, LocalDate from, LocalDate to, RangeLoader loader) {
+        long fromDay = from.toEpochDay(), toDay = to.toEpochDay();
+        int length = (int) (toDay - fromDay + 1);
+        if (!enabled || length > maxRangeDays) return toArray(loader.load(from, to), fromDay, length);
+
+        Segment seg = segment(userId);
+        long loadFrom = fromDay, loadTo = toDay, token;
+        synchronized (seg) {
+            Window w = seg.live(userId);
+            if (w != null && w.version() == version && w.covers(fromDay, toDay)) {
+                hits.increment();
+                return Arrays.copyOfRange(w.totals(), (int) (fromDay - w.firstDay()), (int) (toDay - w.firstDay() + 1));
+            }
+            misses.increment();
+            if (w != null) {
+                long unionFrom = Math.min(fromDay, w.firstDay());
+                long unionTo = Math.max(toDay, w.firstDay() + w.totals().length - 1);
+                if (unionTo - unionFrom + 1 <= maxRangeDays) {
+                    loadFrom = unionFrom;
+                    loadTo = unionTo;
+                }
+            }
+            token = seg.writeToken(userId);
+        }
+
+        long[] loaded = toArray(loader.load(LocalDate.ofEpochDay(loadFrom), LocalDate.ofEpochDay(loadTo)),
+                loadFrom, (int) (loadTo - loadFrom + 1));
+        synchronized (seg) {
+            if (seg.mayStore(userId, token)) seg.put(userId, new Window(version, loadFrom, loaded, System.nanoTime()));
+        }
+        int offset = (int) (fromDay - loadFrom);
+        return Arrays.copyOfRange(loaded, offset, offset + length);
+    }
+
+    /**
+     * Registers per-day increments written to daily_steps in the current transaction, which bumped the user's
+     * version to {@code version}; they are applied to the cached window after commit. Must be called inside the
+     * writing transaction.
+     */
+    void recordWrite(Long userId, long version, Map<LocalDate, Long> increments) {
+        if (!enabled || increments.isEmpty()) return;
+        Map<LocalDate, Long> copy = new HashMap<>(increments);
+        track(userId, seg -> seg.patch(userId, version, copy));
+    }
+
+    /**
+     * Registers a wholesale rewrite of the user's daily rows; the cached window is dropped after commit.
+     */
+    void recordReplace(Long userId) {
+        if (!enabled) return;
+        track(userId, seg -> seg.remove(userId));
+    }
+
+    private void track(Long userId, Consumer<Segment> onCommit) {
+        Segment seg = segment(userId);
+        int s = stripe(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Not expected on the write path; dropping the window is always safe
+            synchronized (seg) {
+                seg.remove(userId);
+                seg.completedWrites[s]++;
+            }
+            return;
+        }
+        synchronized (seg) {
+            seg.inflightWrites[s]++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (seg) {
+                    if (status == STATUS_COMMITTED) onCommit.accept(seg);
+                    else if (status == STATUS_UNKNOWN) seg.remove(userId);
+                    seg.inflightWrites[s]--;
+                    seg.completedWrites[s]++;
+                }
+            }
+        });
+    }
+
+    private Segment segment(Long userId) {
+        return segments[hash(userId) & (SEGMENTS - 1)];
+    }
+
+    private static int stripe(Long userId) {
+        return (hash(userId) >>> 6) & (STRIPES_PER_SEGMENT - 1);
+    }
+
+    private static int hash(Long userId) {
+        return Long.hashCode(userId * 0x9E3779B97F4A7C15L);
+    }
+
+    private static long[] toArray(Map<LocalDate, Long> totals, long firstDay, int length) {
+        long[] out = new long[length];
+        Arrays.fill(out, MISSING);
+        totals.forEach((date, total) -> {
+            long i = date.toEpochDay() - firstDay;
+            if (i >= 0 && i < length) out[(int) i] = total;
+        });
+        return out;
+    }
+
+    private double hitRatio() {
+        double h = hits.count(), total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    private int userCount() {
+        int n = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                n += seg.windows.size();
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,10 @@
+package com.stepapp.steps;
+
+import java.time.LocalDate;
+
+/**
+ * Published inside the writing transaction when some of a user's daily totals between {@code from} and
+ * {@code to} (inclusive) changed; listeners typically react after commit. {@link DailyTotalsNotifications}
+ * forwards it to the other nodes.
+ */
+public record DailyTotalsChangedEvent(Long userId, LocalDate from, LocalDate to) {}
@@ -0,0 +1,119 @@
+package com.stepapp.steps;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Fans {@link DailyTotalsChangedEvent}s out to the leaderboard streams of every node with Postgres LISTEN/NOTIFY.
+ * <p>
+ * The writing transaction sends a notification (user id and date range) on channel {@value #CHANNEL}; Postgres
+ * delivers it only once that transaction commits. Each node listens on one connection taken from the pool for
+ * its lifetime and hands notifications of other nodes to {@link LeaderboardStreams}; its own changes already
+ * reach the streams in-process. Notifications sent while the listening connection is down are lost, so after
+ * reconnecting every open topic is re-rendered once.
+ */
+@Component
+@Slf4j
+class DailyTotalsNotifications {
+
+    static final String CHANNEL = "daily_totals_changed";
+
+    private static final int POLL_MILLIS = 1000;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final LeaderboardStreams streams;
+    private final boolean enabled;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile boolean running;
+    private Thread listener;
+
+    DailyTotalsNotifications(
+            JdbcTemplate jdbcTemplate,
+            DataSource dataSource,
+            LeaderboardStreams streams,
+            @Value("${steps.leaderboard.streams.notify:true}") boolean enabled
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.streams = streams;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) return;
+        running = true;
+        listener = new Thread(this::listen, "daily-totals-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (listener != null) listener.interrupt();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    void onDailyTotalsChanged(DailyTotalsChangedEvent event) {
+        if (!enabled) return;
+        String payload = "%s:%d:%d:%d".formatted(nodeId, event.userId(), event.from().toEpochDay(), event.to().toEpochDay());
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, payload);
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection con = dataSource.getConnection()) {
+                try (Statement st = con.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnecting) {
+                    log.info("Listening for daily total changes again, refreshing all leaderboard streams");
+                    streams.markAllDirty();
+                }
+                PGConnection pg = con.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+                    if (notifications == null) continue;
+                    for (PGNotification n : notifications) dispatch(n.getParameter());
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) return;
+                log.warn("Listening for daily total changes failed, reconnecting in {}", RECONNECT_DELAY, e);
+                reconnecting = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY.toMillis());
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        String[] parts = payload.split(":");
+        if (parts.length != 4 || parts[0].equals(nodeId)) return;
+        streams.onDailyTotalsChanged(new DailyTotalsChangedEvent(Long.parseLong(parts[1]),
+                LocalDate.ofEpochDay(Long.parseLong(parts[2])), LocalDate.ofEpochDay(Long.parseLong(parts[3]))));
+    }
+}
@@ -0,0 +1,70 @@
+package com.stepapp.steps;
+
+/**
+ * Fixed-size Bloom filter over externalId strings (double hashing on a 64-bit FNV-1a hash).
+ * No false negatives for ids that were put; false-positive rate grows once more than
+ * {@link #capacity()} ids were added, which callers detect through {@link #isSaturated()}.
+ */
+final class ExternalIdBloomFilter {
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashes;
+    private final int capacity;
+    private int size;
+
+    ExternalIdBloomFilter(int capacity, double falsePositiveRate, int maxBits) {
+        long wanted = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED);
+        this.bitCount = (int) Math.max(64, Math.min(wanted, maxBits));
+        this.bits = new long[(bitCount + 63) >>> 6];
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.capacity = capacity;
+    }
+
+    synchronized void put(String id) {
+        long h = hash(id);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        size++;
+    }
+
+    synchronized boolean mightContain(String id) {
+        long h = hash(id);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    synchronized boolean isSaturated() {
+        return size > capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // final avalanche so short ids spread over both 32-bit halves
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
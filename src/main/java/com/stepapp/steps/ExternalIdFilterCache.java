@@ -0,0 +1,175 @@
+package com.stepapp.steps;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-(user, provider) Bloom filters of recently stored externalIds, used to drop duplicate samples
+ * before they reach the insert. Only samples whose id the filter reports as "maybe present" are
+ * checked against the database, in one batched query; everything else goes straight to the insert.
+ * <p>
+ * The filter is an optimization only: the ON CONFLICT insert still guarantees dedup, so ids older
+ * than the lookback horizon, evicted filters or rolled-back writes never affect correctness.
+ * <p>
+ * Filters are evicted least recently used first beyond {@code max-filters} or once their bit arrays together
+ * exceed {@code max-bytes}, whichever comes first; filter sizes vary with the user's volume, so the byte
+ * budget is what bounds memory.
+ */
+@Component
+class ExternalIdFilterCache {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+
+    private record FilterKey(Long userId, StepSample.Provider provider) {}
+
+    private final StepSampleRepository sampleRepo;
+    private final boolean enabled;
+    private final Duration horizon;
+    private final int maxBitsPerFilter;
+    private final long maxBytes;
+    private final Map<FilterKey, ExternalIdBloomFilter> filters;
+    private final AtomicLong bytesUsed = new AtomicLong();
+
+    private final Counter definitelyNew;
+    private final Counter maybePresent;
+    private final Counter confirmedDuplicates;
+    private final Counter evictions;
+    private final Counter builds;
+
+    ExternalIdFilterCache(
+            StepSampleRepository sampleRepo,
+            MeterRegistry meterRegistry,
+            @Value("${steps.dedup-filter.enabled:true}") boolean enabled,
+            @Value("${steps.dedup-filter.max-filters:10000}") int maxFilters,
+            @Value("${steps.dedup-filter.max-bits-per-filter:1048576}") int maxBitsPerFilter,
+            @Value("${steps.dedup-filter.max-bytes:268435456}") long maxBytes,
+            @Value("${steps.dedup-filter.horizon:P30D}") Duration horizon
+    ) {
+        this.sampleRepo = sampleRepo;
+        this.enabled = enabled;
+        this.horizon = horizon;
+        this.maxBitsPerFilter = maxBitsPerFilter;
+        this.maxBytes = maxBytes;
+        this.filters = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FilterKey, ExternalIdBloomFilter> eldest) {
+                if (size() <= maxFilters) return false;
+                bytesUsed.addAndGet(-eldest.getValue().sizeInBytes());
+                evictions.increment();
+                return true;
+            }
+        };
+
+        this.definitelyNew = Counter.builder("steps.dedup.filter.checks").tag("result", "skip").register(meterRegistry);
+        this.maybePresent = Counter.builder("steps.dedup.filter.checks").tag("result", "hit").register(meterRegistry);
+        this.confirmedDuplicates = Counter.builder("steps.dedup.filter.duplicates").register(meterRegistry);
+        this.evictions = Counter.builder("steps.dedup.filter.evictions").register(meterRegistry);
+        this.builds = Counter.builder("steps.dedup.filter.builds").register(meterRegistry);
+        Gauge.builder("steps.dedup.filter.count", this, c -> c.filterCount()).register(meterRegistry);
+        Gauge.builder("steps.dedup.filter.memory", bytesUsed, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("steps.dedup.filter.memory.max", () -> this.maxBytes).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Returns the candidates minus those already stored. All candidates must share user and provider.
+     */
+    List<StepSample> dropKnownDuplicates(Long userId, StepSample.Provider provider, List<StepSample> candidates) {
+        if (!enabled || candidates.isEmpty()) return candidates;
+
+        ExternalIdBloomFilter filter = filterFor(new FilterKey(userId, provider));
+        List<StepSample> maybe = new ArrayList<>();
+        int withIds = 0;
+        for (var s : candidates) {
+            if (s.getExternalId() == null) continue;
+            withIds++;
+            if (filter.mightContain(s.getExternalId())) maybe.add(s);
+        }
+        definitelyNew.increment(withIds - maybe.size());
+        maybePresent.increment(maybe.size());
+        if (maybe.isEmpty()) return candidates;
+
+        Set<String> existing = sampleRepo.findExistingExternalIds(userId, provider, maybe);
+        if (existing.isEmpty()) return candidates;
+        confirmedDuplicates.increment(existing.size());
+
+        List<StepSample> remaining = new ArrayList<>(candidates.size());
+        for (var s : candidates) {
+            if (s.getExternalId() == null || !existing.contains(s.getExternalId())) remaining.add(s);
+        }
+        return remaining;
+    }
+
+    /**
+     * Adds freshly inserted ids to their filters. Filters that outgrew their capacity are dropped
+     * and rebuilt, larger, on next use.
+     */
+    void recordInserted(List<StepSample> inserted) {
+        if (!enabled) return;
+        for (var s : inserted) {
+            if (s.getExternalId() == null) continue;
+            FilterKey key = new FilterKey(s.getUser().getId(), s.getProvider());
+            ExternalIdBloomFilter filter;
+            synchronized (filters) {
+                filter = filters.get(key);
+            }
+            if (filter == null) continue; // not loaded: it will be built from the table, including this row
+            filter.put(s.getExternalId());
+            if (filter.isSaturated()) remove(key, filter);
+        }
+    }
+
+    private ExternalIdBloomFilter filterFor(FilterKey key) {
+        synchronized (filters) {
+            ExternalIdBloomFilter existing = filters.get(key);
+            if (existing != null) return existing;
+        }
+
+        // Built outside the lock: the query may take a while for heavy users
+        List<String> recent = new ArrayList<>();
+        sampleRepo.forEachExternalIdSince(key.userId(), key.provider(), OffsetDateTime.now().minus(horizon), recent::add);
+        var filter = new ExternalIdBloomFilter(Math.max(MIN_CAPACITY, recent.size() * 2), FALSE_POSITIVE_RATE, maxBitsPerFilter);
+        recent.forEach(filter::put);
+        builds.increment();
+
+        synchronized (filters) {
+            ExternalIdBloomFilter raced = filters.get(key);
+            if (raced != null) return raced;
+            filters.put(key, filter);
+            bytesUsed.addAndGet(filter.sizeInBytes());
+            evictOverBudget();
+            return filter;
+        }
+    }
+
+    /** Drops least recently used filters until the byte budget holds; the newest filter is always kept. */
+    private void evictOverBudget() {
+        Iterator<ExternalIdBloomFilter> eldestFirst = filters.values().iterator();
+        while (bytesUsed.get() > maxBytes && filters.size() > 1) {
+            ExternalIdBloomFilter eldest = eldestFirst.next();
+            eldestFirst.remove();
+            bytesUsed.addAndGet(-eldest.sizeInBytes());
+            evictions.increment();
+        }
+    }
+
+    private void remove(FilterKey key, ExternalIdBloomFilter filter) {
+        synchronized (filters) {
+            if (filters.remove(key, filter)) bytesUsed.addAndGet(-filter.sizeInBytes());
+        }
+    }
+
+    private int filterCount() {
+        synchronized (filters) {
+            return filters.size();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.stepapp.steps;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory global leaderboards, one {@link RankedDailyBoard} per active local date.
+ * <p>
+ * A board is seeded from daily_steps on first read and then kept current by the write path:
+ * {@link #recordTotals} is called under the per-user advisory lock with the absolute totals the upsert
+ * returned, takes a sequence number there (so sequence order matches commit order per user), and applies
+ * the totals after commit. Seeding only fills users without a live value, so a seed racing an upload
+ * never overwrites newer data. Boards are rebuilt in the background every {@code refresh-interval} to pick
+ * up writes made by other nodes, and dropped once their date is more than {@code retained-days} in the past.
+ */
+@Component
+@Slf4j
+class GlobalDailyLeaderboard {
+
+    private final DailyStepsRepository dailyRepo;
+    private final TransactionTemplate readTx;
+    private final int retainedDays;
+    private final int seedFetchSize;
+
+    private final Map<LocalDate, RankedDailyBoard> boards = new ConcurrentHashMap<>();
+    // Boards being rebuilt receive live updates too, so nothing is missed when they are swapped in
+    private final Map<LocalDate, RankedDailyBoard> building = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(RankedDailyBoard.SEED_SEQUENCE);
+    private final Timer seedTimer;
+
+    GlobalDailyLeaderboard(
+            DailyStepsRepository dailyRepo,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${steps.leaderboard.global.retained-days:2}") int retainedDays,
+            @Value("${steps.leaderboard.global.seed-fetch-size:10000}") int seedFetchSize
+    ) {
+        this.dailyRepo = dailyRepo;
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setReadOnly(true);
+        this.retainedDays = retainedDays;
+        this.seedFetchSize = seedFetchSize;
+
+        this.seedTimer = Timer.builder("steps.leaderboard.global.seed").register(meterRegistry);
+        Gauge.builder("steps.leaderboard.global.boards", boards, Map::size).register(meterRegistry);
+        Gauge.builder("steps.leaderboard.global.entries", boards,
+                b -> b.values().stream().mapToLong(RankedDailyBoard::size).sum()).register(meterRegistry);
+    }
+
+    /**
+     * Whether the date is served from memory: from {@code retained-days} before today (UTC) to tomorrow,
+     * which covers "today" in every timezone. Older dates are answered from the database.
+     */
+    boolean isActive(LocalDate date) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        return !date.isBefore(today.minusDays(retainedDays)) && !date.isAfter(today.plusDays(1));
+    }
+
+    /**
+     * Seeded board of an active date; the first caller for a date seeds it, concurrent callers wait.
+     */
+    RankedDailyBoard board(LocalDate date) {
+        RankedDailyBoard board = boards.computeIfAbsent(date, d -> new RankedDailyBoard());
+        if (!board.isSeeded()) {
+            synchronized (board) {
+                if (!board.isSeeded()) seed(date, board);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Registers the user's new absolute daily totals; boards are updated after commit.
+     * Must be called inside the writing transaction while the user's advisory lock is held.
+     */
+    void recordTotals(Long userId, Map<LocalDate, Long> totals) {
+        if (totals.isEmpty()) return;
+        long seq = sequence.incrementAndGet();
+        Map<LocalDate, Long> copy = new HashMap<>(totals);
+        afterCommit(() -> copy.forEach((date, steps) -> forEachBoard(date, b -> b.set(userId, steps, seq))));
+    }
+
+    /**
+     * Registers a rewrite of all the user's totals dated {@code from} or later (timezone re-bucketing):
+     * dates missing from {@code totals} lose the user. Same locking requirement as {@link #recordTotals}.
+     */
+    void recordReplace(Long userId, LocalDate from, Map<LocalDate, Long> totals) {
+        long seq = sequence.incrementAndGet();
+        Map<LocalDate, Long> copy = new HashMap<>(totals);
+        afterCommit(() -> {
+            for (LocalDate date : activeDates()) {
+                if (date.isBefore(from)) continue;
+                Long steps = copy.get(date);
+                forEachBoard(date, b -> {
+                    if (steps != null) b.set(userId, steps, seq);
+                    else b.remove(userId, seq);
+                });
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${steps.leaderboard.global.refresh-interval:PT15M}",
+            initialDelayString = "${steps.leaderboard.global.refresh-interval:PT15M}")
+    void refresh() {
+        LocalDate oldest = LocalDate.now(ZoneOffset.UTC).minusDays(retainedDays);
+        boards.keySet().removeIf(date -> date.isBefore(oldest));
+        for (LocalDate date : activeDates()) {
+            RankedDailyBoard fresh = new RankedDailyBoard();
+            building.put(date, fresh);
+            try {
+                seed(date, fresh);
+                // Swap before unregistering: an update sees the fresh board in one of the two maps
+                boards.put(date, fresh);
+            } catch (RuntimeException e) {
+                log.warn("Refreshing global leaderboard for {} failed, keeping the current board", date, e);
+            } finally {
+                building.remove(date);
+            }
+        }
+    }
+
+    private void seed(LocalDate date, RankedDailyBoard board) {
+        seedTimer.record(() -> readTx.executeWithoutResult(status ->
+                dailyRepo.forEachTotalOn(date, seedFetchSize, board::seed)));
+        board.markSeeded();
+        log.debug("Seeded global leaderboard for {} with {} users", date, board.size());
+    }
+
+    private Iterable<LocalDate> activeDates() {
+        return Map.copyOf(boards).keySet();
+    }
+
+    private void forEachBoard(LocalDate date, Consumer<RankedDailyBoard> action) {
+        RankedDailyBoard next = building.get(date);
+        if (next != null) action.accept(next);
+        RankedDailyBoard current = boards.get(date);
+        if (current != null && current != next) action.accept(current);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
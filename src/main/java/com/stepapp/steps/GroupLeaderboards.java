@@ -0,0 +1,300 @@
+package com.stepapp.steps;
+
+import com.stepapp.group.GroupMemberRepository;
+import com.stepapp.group.GroupMembershipChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory leaderboards per (group, active date), built on {@link RankedDailyBoard}.
+ * <p>
+ * A group's state (member ids plus one board per date) is loaded on first read; boards are seeded from
+ * daily_steps joined with group_members. Uploads update the boards of every loaded group the uploader belongs
+ * to through an in-memory user-to-groups index, with the same sequence rule as {@link GlobalDailyLeaderboard}.
+ * Joins and leaves published by GroupService adjust member sets and boards after commit. Group states expire
+ * after {@code ttl} (which also bounds staleness for writes made by other nodes) and are evicted, least
+ * recently read first, beyond {@code max-groups} or once the loaded states hold more than {@code max-entries}
+ * member ids plus board rows. Group boards are built without the rank index (see {@link RankedDailyBoard}),
+ * so an entry costs a few hundred bytes and the budget bounds the memory of all group boards.
+ */
+@Component
+@Slf4j
+class GroupLeaderboards {
+
+    // Membership changes are tracked on fixed stripes; a load that raced one is used once but not installed
+    private static final int STRIPES = 256;
+    private static final long REMOVED_SEQUENCE = Long.MAX_VALUE;
+
+    private static final class GroupState {
+        final long groupId;
+        final Set<Long> members;
+        final Map<LocalDate, RankedDailyBoard> boards = new ConcurrentHashMap<>();
+        final long loadedAtNanos = System.nanoTime();
+        volatile long lastReadNanos = loadedAtNanos;
+
+        GroupState(long groupId, Collection<Long> members) {
+            this.groupId = groupId;
+            this.members = ConcurrentHashMap.newKeySet(members.size());
+            this.members.addAll(members);
+        }
+    }
+
+    private final DailyStepsRepository dailyRepo;
+    private final GroupMemberRepository memberRepo;
+    private final GlobalDailyLeaderboard globalLeaderboard;
+    private final TransactionTemplate readTx;
+    private final int maxGroups;
+    private final long maxEntries;
+    private final long ttlNanos;
+    private final int seedFetchSize;
+
+    private final Map<Long, GroupState> groups = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> groupsByUser = new ConcurrentHashMap<>();
+    private final long[] membershipChanges = new long[STRIPES];
+    private final AtomicLong sequence = new AtomicLong(RankedDailyBoard.SEED_SEQUENCE);
+
+    GroupLeaderboards(
+            DailyStepsRepository dailyRepo,
+            GroupMemberRepository memberRepo,
+            GlobalDailyLeaderboard globalLeaderboard,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${steps.leaderboard.groups.max-groups:10000}") int maxGroups,
+            @Value("${steps.leaderboard.groups.max-entries:2000000}") long maxEntries,
+            @Value("${steps.leaderboard.groups.ttl:PT15M}") Duration ttl,
+            @Value("${steps.leaderboard.global.seed-fetch-size:10000}") int seedFetchSize
+    ) {
+        this.dailyRepo = dailyRepo;
+        this.memberRepo = memberRepo;
+        this.globalLeaderboard = globalLeaderboard;
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setReadOnly(true);
+        this.maxGroups = maxGroups;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.seedFetchSize = seedFetchSize;
+
+        Gauge.builder("steps.leaderboard.groups.loaded", groups, Map::size).register(meterRegistry);
+        Gauge.builder("steps.leaderboard.groups.indexed.users", groupsByUser, Map::size).register(meterRegistry);
+        Gauge.builder("steps.leaderboard.groups.entries", groups,
+                g -> g.values().stream().mapToLong(GroupLeaderboards::weight).sum()).register(meterRegistry);
+    }
+
+    /**
+     * Whether (group, date) is served from memory; same window as the global leaderboard.
+     */
+    boolean isActive(LocalDate date) {
+        return globalLeaderboard.isActive(date);
+    }
+
+    /**
+     * Seeded board of a group on an active date. The group must exist.
+     */
+    RankedDailyBoard board(long groupId, LocalDate date) {
+        GroupState state = state(groupId);
+        state.lastReadNanos = System.nanoTime();
+        RankedDailyBoard board = state.boards.get(date);
+        if (board == null) {
+            board = state.boards.computeIfAbsent(date, d -> new RankedDailyBoard(false));
+            synchronized (this) {
+                if (groups.get(groupId) == state) evictOverBudget(state);
+            }
+        }
+        if (!board.isSeeded()) {
+            RankedDailyBoard seeding = board;
+            synchronized (seeding) {
+                if (!seeding.isSeeded()) {
+                    readTx.executeWithoutResult(status ->
+                            dailyRepo.forEachGroupTotalOn(groupId, date, seedFetchSize, seeding::seed));
+                    seeding.markSeeded();
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Registers the user's new absolute daily totals for the boards of their loaded groups.
+     * Must be called inside the writing transaction while the user's advisory lock is held.
+     */
+    void recordTotals(Long userId, Map<LocalDate, Long> totals) {
+        if (totals.isEmpty()) return;
+        long seq = sequence.incrementAndGet();
+        Map<LocalDate, Long> copy = new HashMap<>(totals);
+        afterCommit(() -> forEachBoardOf(userId, (date, board) -> {
+            Long steps = copy.get(date);
+            if (steps != null) board.set(userId, steps, seq);
+        }));
+    }
+
+    /**
+     * Registers a rewrite of all the user's totals dated {@code from} or later (timezone re-bucketing).
+     */
+    void recordReplace(Long userId, LocalDate from, Map<LocalDate, Long> totals) {
+        long seq = sequence.incrementAndGet();
+        Map<LocalDate, Long> copy = new HashMap<>(totals);
+        afterCommit(() -> forEachBoardOf(userId, (date, board) -> {
+            if (date.isBefore(from)) return;
+            Long steps = copy.get(date);
+            if (steps != null) board.set(userId, steps, seq);
+            else board.remove(userId, seq);
+        }));
+    }
+
+    @TransactionalEventListener
+    void onMembershipChanged(GroupMembershipChangedEvent event) {
+        long groupId = event.groupId();
+        GroupState state;
+        synchronized (this) {
+            membershipChanges[stripe(groupId)]++;
+            state = groups.get(groupId);
+            if (state == null) return;
+            switch (event.change()) {
+                case GROUP_DELETED -> uninstall(state);
+                case LEFT -> {
+                    state.members.remove(event.userId());
+                    unindex(event.userId(), groupId);
+                    state.boards.values().forEach(b -> b.remove(event.userId(), REMOVED_SEQUENCE));
+                }
+                case JOINED -> {
+                    state.members.add(event.userId());
+                    groupsByUser.computeIfAbsent(event.userId(), u -> ConcurrentHashMap.newKeySet()).add(groupId);
+                }
+            }
+        }
+        if (event.change() == GroupMembershipChangedEvent.Change.JOINED && !state.boards.isEmpty()) {
+            // Indexed first, read second: uploads committing after this read reach the boards through the index
+            var dates = new TreeSet<>(state.boards.keySet());
+            Map<LocalDate, Long> totals = dailyRepo.findTotalsBetween(event.userId(), dates.first(), dates.last());
+            state.boards.forEach((date, board) -> {
+                Long steps = totals.get(date);
+                if (steps != null) board.seed(event.userId(), steps);
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${steps.leaderboard.groups.cleanup-interval:PT5M}")
+    void cleanup() {
+        long now = System.nanoTime();
+        for (GroupState state : groups.values()) {
+            if (now - state.loadedAtNanos > ttlNanos) {
+                synchronized (this) {
+                    uninstall(state);
+                }
+                continue;
+            }
+            state.boards.keySet().removeIf(date -> !isActive(date));
+        }
+    }
+
+    private GroupState state(long groupId) {
+        GroupState state = groups.get(groupId);
+        if (state != null && System.nanoTime() - state.loadedAtNanos <= ttlNanos) return state;
+
+        long changes;
+        synchronized (this) {
+            changes = membershipChanges[stripe(groupId)];
+        }
+        List<Long> members = readTx.execute(status -> memberRepo.findUserIdsByGroupId(groupId));
+        GroupState fresh = new GroupState(groupId, members);
+        synchronized (this) {
+            GroupState current = groups.get(groupId);
+            if (current != null && current != state) return current; // someone else reloaded meanwhile
+            if (membershipChanges[stripe(groupId)] != changes) {
+                return fresh; // membership moved while loading: serve this read, install on a later one
+            }
+            if (state != null) uninstall(state);
+            evictOverBudget(fresh);
+            for (Long userId : fresh.members) {
+                groupsByUser.computeIfAbsent(userId, u -> ConcurrentHashMap.newKeySet()).add(groupId);
+            }
+            groups.put(groupId, fresh);
+        }
+        return fresh;
+    }
+
+    private void forEachBoardOf(Long userId, BiConsumer<LocalDate, RankedDailyBoard> action) {
+        Set<Long> groupIds = groupsByUser.get(userId);
+        if (groupIds == null) return;
+        for (Long groupId : groupIds) {
+            GroupState state = groups.get(groupId);
+            if (state != null && state.members.contains(userId)) state.boards.forEach(action);
+        }
+    }
+
+    // --- below: callers hold the monitor ---
+
+    private void uninstall(GroupState state) {
+        if (!groups.remove(state.groupId, state)) return;
+        for (Long userId : state.members) unindex(userId, state.groupId);
+    }
+
+    private void unindex(Long userId, long groupId) {
+        groupsByUser.computeIfPresent(userId, (u, set) -> {
+            set.remove(groupId);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Evicts other groups, least recently read first, until {@code keep} (installed or about to be) fits
+     * both the group count and the entry budget.
+     */
+    private void evictOverBudget(GroupState keep) {
+        int loaded = 1;
+        long entries = weight(keep);
+        for (GroupState s : groups.values()) {
+            if (s == keep) continue;
+            loaded++;
+            entries += weight(s);
+        }
+        while (loaded > maxGroups || entries > maxEntries) {
+            GroupState victim = groups.values().stream()
+                    .filter(s -> s != keep)
+                    .min(Comparator.comparingLong(s -> s.lastReadNanos))
+                    .orElse(null);
+            if (victim == null) return; // a single group over the budget is still served
+            uninstall(victim);
+            loaded--;
+            entries -= weight(victim);
+        }
+    }
+
+    /** Member ids plus the board rows they can fill, the unit of the {@code max-entries} budget. */
+    private static long weight(GroupState state) {
+        return (long) state.members.size() * (1 + state.boards.size());
+    }
+
+    private static int stripe(long groupId) {
+        return Long.hashCode(groupId * 0x9E3779B97F4A7C15L) & (STRIPES - 1);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,7 @@
+package com.stepapp.steps;
+
+/**
+ * Validators for a daily/history response: a strong ETag over the requested range and the version of the
+ * user's daily totals, and the time of that version (epoch millis, -1 before the user's first write).
+ */
+record HistoryVersion(String etag, long lastModifiedMillis) {}
@@ -0,0 +1,44 @@
+package com.stepapp.steps;
+
+import com.stepapp.user.User;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * Steps per local hour of the user's day (hour 0-23 in the user's time zone).
+ */
+@Entity
+@Table(name = "hourly_steps", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"user_id", "date", "hour"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HourlySteps {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "date", nullable = false)
+    private LocalDate date;
+
+    @Column(name = "hour", nullable = false)
+    private Integer hour;
+
+    @Builder.Default
+    @Column(name = "steps_total", nullable = false)
+    private Long stepsTotal = 0L;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+}
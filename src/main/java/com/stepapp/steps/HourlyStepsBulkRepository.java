@@ -0,0 +1,28 @@
+package com.stepapp.steps;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Atomic write path for hourly rollups.
+ */
+public interface HourlyStepsBulkRepository {
+
+    /**
+     * Adds per-hour increments (keys are local date-times truncated to the hour) to the user's
+     * hourly rollup in one INSERT ... ON CONFLICT DO UPDATE statement.
+     */
+    void addToTotals(Long userId, Map<LocalDateTime, Long> increments);
+
+    /**
+     * Replaces all of the user's hourly rows dated {@code from} or later with {@code totals}.
+     * Atomic only within the caller's transaction.
+     */
+    void replaceTotalsFrom(Long userId, LocalDate from, Map<LocalDateTime, Long> totals);
+
+    /**
+     * Replaces all of the user's hourly rows with {@code totals}. Atomic only within the caller's transaction.
+     */
+    void replaceAllTotals(Long userId, Map<LocalDateTime, Long> totals);
+}
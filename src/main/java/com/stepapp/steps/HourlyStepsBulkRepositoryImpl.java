@@ -0,0 +1,78 @@
+package com.stepapp.steps;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RequiredArgsConstructor
+class HourlyStepsBulkRepositoryImpl implements HourlyStepsBulkRepository {
+
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO hourly_steps (user_id, date, hour, steps_total, updated_at)
+            VALUES\s""";
+
+    private static final String UPSERT_SUFFIX = """
+             ON CONFLICT (user_id, date, hour) DO UPDATE
+            SET steps_total = hourly_steps.steps_total + EXCLUDED.steps_total,
+                updated_at = EXCLUDED.updated_at""";
+
+    // Rows per upsert statement when replacing a user's whole history (bind-parameter limit)
+    private static final int REPLACE_CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void addToTotals(Long userId, Map<LocalDateTime, Long> increments) {
+        if (increments.isEmpty()) return;
+
+        // Same ordering rule as daily_steps: lock rows in time order to avoid deadlocks
+        Map<LocalDateTime, Long> ordered = new TreeMap<>(increments);
+        OffsetDateTime now = OffsetDateTime.now();
+
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        List<Object> args = new ArrayList<>(ordered.size() * 5);
+        for (var e : ordered.entrySet()) {
+            if (!args.isEmpty()) sql.append(',');
+            sql.append("(?,?,?,?,?)");
+            args.add(userId);
+            args.add(e.getKey().toLocalDate());
+            args.add(e.getKey().getHour());
+            args.add(e.getValue());
+            args.add(now);
+        }
+        sql.append(UPSERT_SUFFIX);
+
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    @Override
+    public void replaceTotalsFrom(Long userId, LocalDate from, Map<LocalDateTime, Long> totals) {
+        jdbcTemplate.update("DELETE FROM hourly_steps WHERE user_id = ? AND date >= ?", userId, from);
+        insert(userId, totals);
+    }
+
+    @Override
+    public void replaceAllTotals(Long userId, Map<LocalDateTime, Long> totals) {
+        jdbcTemplate.update("DELETE FROM hourly_steps WHERE user_id = ?", userId);
+        insert(userId, totals);
+    }
+
+    private void insert(Long userId, Map<LocalDateTime, Long> totals) {
+        Map<LocalDateTime, Long> chunk = new TreeMap<>();
+        for (var e : new TreeMap<>(totals).entrySet()) {
+            chunk.put(e.getKey(), e.getValue());
+            if (chunk.size() == REPLACE_CHUNK_SIZE) {
+                addToTotals(userId, chunk);
+                chunk = new TreeMap<>();
+            }
+        }
+        addToTotals(userId, chunk);
+    }
+}
@@ -0,0 +1,11 @@
+package com.stepapp.steps;
+
+import com.stepapp.user.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface HourlyStepsRepository extends JpaRepository<HourlySteps, Long>, HourlyStepsBulkRepository {
+    List<HourlySteps> findAllByUserAndDateOrderByHour(User user, LocalDate date);
+}
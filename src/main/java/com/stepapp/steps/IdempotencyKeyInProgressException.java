@@ -0,0 +1,11 @@
+package com.stepapp.steps;
+
+/**
+ * Thrown when an upload with the same Idempotency-Key is still running, here or on another node;
+ * clients should retry later and will then get the stored response.
+ */
+public class IdempotencyKeyInProgressException extends RuntimeException {
+    public IdempotencyKeyInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.stepapp.steps;
+
+/**
+ * Thrown when an Idempotency-Key is reused with a different request than the one it was first sent with;
+ * the stored response does not describe this request, so it is neither replayed nor run.
+ */
+public class IdempotencyKeyMismatchException extends RuntimeException {
+    public IdempotencyKeyMismatchException(String message) {
+        super(message);
+    }
+}
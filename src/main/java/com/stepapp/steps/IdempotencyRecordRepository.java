@@ -0,0 +1,56 @@
+package com.stepapp.steps;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByUserIdAndKeyAndExpiresAtAfter(Long userId, String key, OffsetDateTime now);
+
+    /**
+     * Claims the key with a pending row (no response) unless a live row exists; an expired row, including the
+     * claim of a node that died mid-upload, is taken over. Returns 1 when this caller holds the claim.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO idempotency_keys (user_id, idem_key, request_hash, created_at, expires_at)
+            VALUES (:userId, :key, :requestHash, :claimedAt, :claimExpiresAt)
+            ON CONFLICT (user_id, idem_key) DO UPDATE
+                SET request_hash = EXCLUDED.request_hash, response = NULL,
+                    created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at
+                WHERE idempotency_keys.expires_at <= EXCLUDED.created_at""", nativeQuery = true)
+    int claim(Long userId, String key, String requestHash, OffsetDateTime claimedAt, OffsetDateTime claimExpiresAt);
+
+    /**
+     * Stores the response on this caller's claim; 0 when the claim expired and was taken over meanwhile.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE idempotency_keys SET response = :response, expires_at = :expiresAt
+            WHERE user_id = :userId AND idem_key = :key AND created_at = :claimedAt AND response IS NULL""",
+            nativeQuery = true)
+    int complete(Long userId, String key, OffsetDateTime claimedAt, String response, OffsetDateTime expiresAt);
+
+    /**
+     * Drops this caller's claim after a failed upload so a retry can run it again.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM idempotency_keys
+            WHERE user_id = :userId AND idem_key = :key AND created_at = :claimedAt AND response IS NULL""",
+            nativeQuery = true)
+    int release(Long userId, String key, OffsetDateTime claimedAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(OffsetDateTime now);
+}
@@ -0,0 +1,26 @@
+package com.stepapp.steps;
+
+import lombok.Getter;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * One queued asynchronous upload. Its status lives in {@link IngestJobRecord}; this only carries the samples
+ * to the writer.
+ */
+@Getter
+class IngestJob {
+
+    enum Status { QUEUED, DONE, FAILED }
+
+    private final UUID id = UUID.randomUUID();
+    private final Long userId;
+    private final PreparedUpload upload;
+    private final OffsetDateTime queuedAt = OffsetDateTime.now();
+
+    IngestJob(PreparedUpload upload) {
+        this.upload = upload;
+        this.userId = upload.user().getId();
+    }
+}
@@ -0,0 +1,45 @@
+package com.stepapp.steps;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Status of an asynchronous upload, readable from any node. Inserted as QUEUED when the upload is queued and
+ * marked DONE (with the upload's result as JSON) in the transaction that writes its samples.
+ */
+@Entity
+@Table(name = "ingest_jobs", indexes = {
+        @Index(name = "idx_ingest_jobs_queued_at", columnList = "queued_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestJobRecord {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 10)
+    private IngestJob.Status status;
+
+    @Column(name = "result", columnDefinition = "text")
+    private String result;
+
+    @Column(name = "error", length = 200)
+    private String error;
+
+    @Column(name = "queued_at", nullable = false)
+    private OffsetDateTime queuedAt;
+
+    @Column(name = "finished_at")
+    private OffsetDateTime finishedAt;
+}
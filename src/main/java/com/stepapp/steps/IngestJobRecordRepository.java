@@ -0,0 +1,36 @@
+package com.stepapp.steps;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface IngestJobRecordRepository extends JpaRepository<IngestJobRecord, UUID> {
+
+    Optional<IngestJobRecord> findByIdAndUserId(UUID id, Long userId);
+
+    /**
+     * Marks the job done; runs in the caller's transaction, the one writing the job's samples.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE ingest_jobs SET status = 'DONE', result = :result, finished_at = :finishedAt
+            WHERE id = :id""", nativeQuery = true)
+    int complete(UUID id, String result, OffsetDateTime finishedAt);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE ingest_jobs SET status = 'FAILED', error = :error, finished_at = :finishedAt
+            WHERE id = :id""", nativeQuery = true)
+    int fail(UUID id, String error, OffsetDateTime finishedAt);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM ingest_jobs WHERE COALESCE(finished_at, queued_at) < :cutoff", nativeQuery = true)
+    int deleteFinishedBefore(OffsetDateTime cutoff);
+}
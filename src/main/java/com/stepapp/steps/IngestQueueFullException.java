@@ -0,0 +1,10 @@
+package com.stepapp.steps;
+
+/**
+ * Thrown when the asynchronous ingest queue has no room left; clients should retry later.
+ */
+public class IngestQueueFullException extends RuntimeException {
+    public IngestQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,156 @@
+package com.stepapp.steps;
+
+import java.util.Arrays;
+
+/**
+ * Sorted-sweep merge of overlapping step intervals from several providers.
+ * <p>
+ * Wherever intervals of different providers overlap, only the provider with the best priority
+ * (lowest number) counts; a sample contributes its steps prorated by the share of its duration
+ * during which its provider is the winner. Samples of the same provider never suppress each other.
+ * Zero-length samples count fully unless an interval of a better provider covers their instant.
+ * <p>
+ * Runs in O(n log n) for n intervals (one primitive sort) and allocates only primitive arrays.
+ */
+final class IntervalReconciler {
+
+    // Packed sort keys: [millis since base : 38 bits][sample index : 24 bits][isStart : 1 bit]
+    private static final int INDEX_BITS = 24;
+    private static final int MAX_SAMPLES = 1 << INDEX_BITS;
+    private static final long MAX_SPAN_MILLIS = (1L << 38) - 1; // ~8.7 years
+
+    private final long[] start;
+    private final long[] end;
+    private final int[] priority;
+    private final long[] steps;
+    private final int priorities;
+    private final long base;
+
+    /**
+     * @param priorities number of distinct priority levels; every priority[i] must be in [0, priorities)
+     */
+    IntervalReconciler(long[] startMillis, long[] endMillis, int[] priority, long[] steps, int priorities) {
+        this.start = startMillis;
+        this.end = endMillis;
+        this.priority = priority;
+        this.steps = steps;
+        this.priorities = priorities;
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < startMillis.length; i++) {
+            min = Math.min(min, startMillis[i]);
+            max = Math.max(max, endMillis[i]);
+        }
+        this.base = startMillis.length == 0 ? 0 : min;
+        if (startMillis.length >= MAX_SAMPLES || (startMillis.length > 0 && max - min > MAX_SPAN_MILLIS)) {
+            throw new IllegalArgumentException("Reconciliation window too large: " + startMillis.length + " samples");
+        }
+    }
+
+    int size() {
+        return start.length;
+    }
+
+    /**
+     * Reconciled step contribution of every sample, considering only samples with {@code included[i]}
+     * (pass null to include all). Excluded samples get 0.
+     */
+    long[] contributions(boolean[] included) {
+        int n = start.length;
+        long[] events = sortedEvents(included);
+
+        int[] active = new int[priorities];
+        long[] winTime = new long[priorities];   // cumulative time during which each priority was the winner
+        long[] winAtStart = new long[n];
+        long[] contribution = new long[n];
+        boolean[] pointPending = new boolean[n];
+        int[] points = new int[n];
+        int pointCount = 0;
+
+        long prevTime = Long.MIN_VALUE;
+        int e = 0;
+        while (e < events.length) {
+            long t = eventTime(events[e]);
+            if (prevTime != Long.MIN_VALUE && t > prevTime) {
+                int w = winner(active);
+                if (w >= 0) winTime[w] += t - prevTime;
+            }
+            // Apply all events at time t
+            for (; e < events.length && eventTime(events[e]) == t; e++) {
+                int i = eventIndex(events[e]);
+                if (end[i] == start[i]) {
+                    if (!pointPending[i]) {
+                        pointPending[i] = true;
+                        points[pointCount++] = i;
+                    }
+                } else if (isStart(events[e])) {
+                    active[priority[i]]++;
+                    winAtStart[i] = winTime[priority[i]];
+                } else {
+                    active[priority[i]]--;
+                    long won = winTime[priority[i]] - winAtStart[i];
+                    contribution[i] = prorate(steps[i], won, end[i] - start[i]);
+                }
+            }
+            // Instant samples at t win if nothing better covers t (intervals starting at t cover it, ending at t don't)
+            if (pointCount > 0) {
+                int w = winner(active);
+                for (int k = 0; k < pointCount; k++) {
+                    int i = points[k];
+                    if (w < 0 || priority[i] <= w) contribution[i] = steps[i];
+                    pointPending[i] = false;
+                }
+                pointCount = 0;
+            }
+            prevTime = t;
+        }
+        return contribution;
+    }
+
+    private int winner(int[] active) {
+        for (int p = 0; p < priorities; p++) {
+            if (active[p] > 0) return p;
+        }
+        return -1;
+    }
+
+    private static long prorate(long steps, long won, long duration) {
+        if (won >= duration) return steps;
+        if (won <= 0) return 0;
+        // round half up without floating point
+        return (steps * won * 2 + duration) / (duration * 2);
+    }
+
+    private long[] sortedEvents(boolean[] included) {
+        int n = start.length;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (included == null || included[i]) count += end[i] == start[i] ? 1 : 2;
+        }
+        long[] events = new long[count];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (included != null && !included[i]) continue;
+            events[k++] = pack(start[i], i, true);
+            if (end[i] != start[i]) events[k++] = pack(end[i], i, false);
+        }
+        Arrays.sort(events);
+        return events;
+    }
+
+    private long pack(long time, int index, boolean isStart) {
+        return ((time - base) << (INDEX_BITS + 1)) | ((long) index << 1) | (isStart ? 1 : 0);
+    }
+
+    private long eventTime(long event) {
+        return (event >>> (INDEX_BITS + 1)) + base;
+    }
+
+    private static int eventIndex(long event) {
+        return (int) ((event >>> 1) & (MAX_SAMPLES - 1));
+    }
+
+    private static boolean isStart(long event) {
+        return (event & 1) == 1;
+    }
+}
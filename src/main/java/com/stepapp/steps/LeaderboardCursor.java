@@ -0,0 +1,46 @@
+package com.stepapp.steps;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Keyset position in a leaderboard ordered by (steps desc, userId asc): the last listed entry, plus its rank
+ * and how many entries were listed before, so the next page continues ranks without counting the users ahead.
+ * Clients only see the opaque {@link #encode() token}.
+ */
+record LeaderboardCursor(long steps, long userId, long rank, long listed) {
+
+    /** Before the first entry. */
+    static final LeaderboardCursor FIRST = new LeaderboardCursor(Long.MAX_VALUE, Long.MIN_VALUE, 0, 0);
+
+    private static final int BYTES = 4 * Long.BYTES;
+
+    /**
+     * The cursor of a client token; {@link #FIRST} when there is none.
+     */
+    static LeaderboardCursor decode(String token) {
+        if (token == null || token.isBlank()) return FIRST;
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (raw.length != BYTES) throw new IllegalArgumentException("Invalid cursor");
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        return new LeaderboardCursor(buf.getLong(), buf.getLong(), buf.getLong(), buf.getLong());
+    }
+
+    String encode() {
+        ByteBuffer buf = ByteBuffer.allocate(BYTES).putLong(steps).putLong(userId).putLong(rank).putLong(listed);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    /**
+     * Cursor after the next entry in order: equal totals share the rank, a lower total takes its position.
+     */
+    LeaderboardCursor next(long nextUserId, long nextSteps) {
+        long position = listed + 1;
+        return new LeaderboardCursor(nextSteps, nextUserId, nextSteps == steps ? rank : position, position);
+    }
+}
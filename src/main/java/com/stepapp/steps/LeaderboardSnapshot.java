@@ -0,0 +1,49 @@
+package com.stepapp.steps;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+/**
+ * Frozen leaderboard of a finished date (see {@link LeaderboardSnapshotFinalizer}). Rows are written once and
+ * never updated; the payload is a {@link RankedSnapshot} encoding.
+ */
+@Entity
+@Table(name = "leaderboard_snapshots", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"scope", "scope_id", "date"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LeaderboardSnapshot {
+
+    public enum Scope { GLOBAL, GROUP }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "scope", nullable = false, length = 10)
+    private Scope scope;
+
+    /** Group id; 0 for the global leaderboard. */
+    @Column(name = "scope_id", nullable = false)
+    private Long scopeId;
+
+    @Column(name = "date", nullable = false)
+    private LocalDate date;
+
+    @Column(name = "entries", nullable = false)
+    private Integer entries;
+
+    @Column(name = "payload", nullable = false)
+    private byte[] payload;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+}
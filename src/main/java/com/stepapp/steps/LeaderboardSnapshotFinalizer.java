@@ -0,0 +1,179 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.LeaderboardSnapshot.Scope;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Freezes the leaderboards of finished dates into leaderboard_snapshots: one global snapshot plus one per group
+ * with any total that day, each written once and never touched again.
+ * <p>
+ * Every board mixes users from all timezones, so a date is finished once it has ended everywhere (UTC-12) and
+ * {@code grace} has passed for late device syncs. Uploads for a date arriving after that still change the
+ * user's history, but no longer that date's leaderboards. The global row is written last and marks the date as
+ * finalized; missed dates are caught up on the next run. Only one node finalizes at a time (advisory lock).
+ */
+@Component
+@Slf4j
+class LeaderboardSnapshotFinalizer {
+
+    private static final long ADVISORY_LOCK_KEY = 0x5374_6570_536e_6170L; // "StepSnap"
+    private static final ZoneOffset LAST_TIMEZONE = ZoneOffset.ofHours(-12);
+    private static final int GROUP_BATCH_SIZE = 500;
+    private static final String INSERT = """
+            INSERT INTO leaderboard_snapshots (scope, scope_id, date, entries, payload, created_at)
+            VALUES (?, ?, ?, ?, ?, now())
+            ON CONFLICT (scope, scope_id, date) DO NOTHING""";
+
+    private final DailyStepsRepository dailyRepo;
+    private final LeaderboardSnapshotRepository snapshotRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final Duration grace;
+    private final int backfillDays;
+    private final int fetchSize;
+
+    LeaderboardSnapshotFinalizer(
+            DailyStepsRepository dailyRepo,
+            LeaderboardSnapshotRepository snapshotRepo,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${steps.leaderboard.snapshots.enabled:true}") boolean enabled,
+            @Value("${steps.leaderboard.snapshots.grace:PT12H}") Duration grace,
+            @Value("${steps.leaderboard.snapshots.backfill-days:30}") int backfillDays,
+            @Value("${steps.leaderboard.global.seed-fetch-size:10000}") int fetchSize
+    ) {
+        this.dailyRepo = dailyRepo;
+        this.snapshotRepo = snapshotRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.grace = grace;
+        this.backfillDays = Math.max(1, backfillDays);
+        this.fetchSize = fetchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onStartup() {
+        finalizeClosedDates();
+    }
+
+    @Scheduled(cron = "${steps.leaderboard.snapshots.finalize-cron:0 5 * * * *}")
+    void finalizeClosedDates() {
+        if (!enabled) return;
+        LocalDate last = lastClosedDate(Instant.now(), grace);
+        LocalDate next = snapshotRepo.findLastDate(Scope.GLOBAL)
+                .map(d -> d.plusDays(1))
+                .orElse(last.minusDays(backfillDays - 1));
+        for (LocalDate date = next; !date.isAfter(last); date = date.plusDays(1)) {
+            if (!finalizeDate(date)) return;
+        }
+    }
+
+    /**
+     * Latest date that has ended in every timezone at least {@code grace} ago.
+     */
+    static LocalDate lastClosedDate(Instant now, Duration grace) {
+        return LocalDate.ofInstant(now.minus(grace), LAST_TIMEZONE).minusDays(1);
+    }
+
+    private boolean finalizeDate(LocalDate date) {
+        return Boolean.TRUE.equals(tx.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY);
+            if (!Boolean.TRUE.equals(locked)) {
+                log.debug("Leaderboard finalization already running on another node");
+                return false;
+            }
+            if (snapshotRepo.existsByScopeAndScopeIdAndDate(Scope.GLOBAL, 0L, date)) return true;
+
+            GroupWriter groups = new GroupWriter(date);
+            dailyRepo.forEachGroupRankedOn(date, fetchSize, groups);
+            groups.finish();
+
+            RankedRows global = new RankedRows();
+            dailyRepo.forEachRankedOn(date, fetchSize, global::add);
+            jdbcTemplate.update(INSERT, row(Scope.GLOBAL, 0L, date, global));
+            log.info("Finalized leaderboards of {}: {} users, {} groups", date, global.count, groups.written);
+            return true;
+        }));
+    }
+
+    private static Object[] row(Scope scope, long scopeId, LocalDate date, RankedRows rows) {
+        return new Object[]{scope.name(), scopeId, date, rows.count, RankedSnapshot.encode(rows.userIds, rows.steps, rows.count)};
+    }
+
+    /**
+     * Cuts the group-ordered stream into one snapshot per group and inserts them in batches.
+     */
+    private final class GroupWriter implements DailyStepsBulkRepository.GroupTotalConsumer {
+        private final LocalDate date;
+        private final RankedRows rows = new RankedRows();
+        private final List<Object[]> batch = new ArrayList<>(GROUP_BATCH_SIZE);
+        private long groupId = -1;
+        private int written;
+
+        GroupWriter(LocalDate date) {
+            this.date = date;
+        }
+
+        @Override
+        public void accept(long groupId, long userId, long stepsTotal) {
+            if (groupId != this.groupId) {
+                endGroup();
+                this.groupId = groupId;
+            }
+            rows.add(userId, stepsTotal);
+        }
+
+        void finish() {
+            endGroup();
+            flush();
+        }
+
+        private void endGroup() {
+            if (rows.count == 0) return;
+            batch.add(row(Scope.GROUP, groupId, date, rows));
+            rows.count = 0;
+            written++;
+            if (batch.size() == GROUP_BATCH_SIZE) flush();
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) return;
+            jdbcTemplate.batchUpdate(INSERT, batch);
+            batch.clear();
+        }
+    }
+
+    private static final class RankedRows {
+        long[] userIds = new long[64];
+        long[] steps = new long[64];
+        int count;
+
+        void add(long userId, long stepsTotal) {
+            if (count == userIds.length) {
+                userIds = Arrays.copyOf(userIds, count * 2);
+                steps = Arrays.copyOf(steps, count * 2);
+            }
+            userIds[count] = userId;
+            steps[count] = stepsTotal;
+            count++;
+        }
+    }
+}
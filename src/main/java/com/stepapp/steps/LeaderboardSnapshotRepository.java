@@ -0,0 +1,19 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.LeaderboardSnapshot.Scope;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+public interface LeaderboardSnapshotRepository extends JpaRepository<LeaderboardSnapshot, Long> {
+
+    @Query("SELECT s.payload FROM LeaderboardSnapshot s WHERE s.scope = :scope AND s.scopeId = :scopeId AND s.date = :date")
+    Optional<byte[]> findPayload(Scope scope, Long scopeId, LocalDate date);
+
+    boolean existsByScopeAndScopeIdAndDate(Scope scope, Long scopeId, LocalDate date);
+
+    @Query("SELECT MAX(s.date) FROM LeaderboardSnapshot s WHERE s.scope = :scope")
+    Optional<LocalDate> findLastDate(Scope scope);
+}
@@ -0,0 +1,110 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.LeaderboardSnapshot.Scope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decoded leaderboard snapshots of finalized dates. Snapshots never change once written, so cached ones never
+ * expire; global snapshots (one per date, large) and group snapshots (small, many) have separate LRU bounds.
+ * An empty result means the date was not finalized and callers fall back to daily_steps. Such misses are cached
+ * too, for {@code missing-ttl}: the finalizer may run on another node, so a date can only be trusted to stay
+ * unfinalized for a while, but lookups of today's or a recent date should not query the table on every request.
+ */
+@Component
+class LeaderboardSnapshots {
+
+    private record Key(long scopeId, LocalDate date) {}
+
+    // Dates remembered as not finalized; more than a few are only ever asked for by clients probing odd dates
+    private static final int MAX_MISSING_DATES = 1024;
+
+    private final LeaderboardSnapshotRepository snapshotRepo;
+    private final Map<Key, RankedSnapshot> globals;
+    private final Map<Key, RankedSnapshot> groups;
+    private final Map<LocalDate, Long> missingUntil; // date -> System.nanoTime() the miss expires
+    private final long missingTtlNanos;
+
+    LeaderboardSnapshots(
+            LeaderboardSnapshotRepository snapshotRepo,
+            @Value("${steps.leaderboard.snapshots.cached-dates:7}") int cachedDates,
+            @Value("${steps.leaderboard.snapshots.cached-groups:10000}") int cachedGroups,
+            @Value("${steps.leaderboard.snapshots.missing-ttl:PT1M}") Duration missingTtl
+    ) {
+        this.snapshotRepo = snapshotRepo;
+        this.globals = lru(cachedDates);
+        this.groups = lru(cachedGroups);
+        this.missingUntil = lru(MAX_MISSING_DATES);
+        this.missingTtlNanos = missingTtl.toNanos();
+    }
+
+    Optional<RankedSnapshot> global(LocalDate date) {
+        Key key = new Key(0L, date);
+        RankedSnapshot cached = get(globals, key);
+        if (cached != null) return Optional.of(cached);
+        if (knownMissing(date)) return Optional.empty();
+        Optional<RankedSnapshot> loaded = snapshotRepo.findPayload(Scope.GLOBAL, 0L, date).map(RankedSnapshot::decode);
+        if (loaded.isEmpty()) rememberMissing(date);
+        return loaded.map(s -> put(globals, key, s));
+    }
+
+    Optional<RankedSnapshot> group(long groupId, LocalDate date) {
+        Key key = new Key(groupId, date);
+        RankedSnapshot cached = get(groups, key);
+        if (cached != null) return Optional.of(cached);
+        if (knownMissing(date)) return Optional.empty();
+        Optional<RankedSnapshot> loaded = snapshotRepo.findPayload(Scope.GROUP, groupId, date).map(RankedSnapshot::decode);
+        // Groups without any total that day get no row; on a finalized date their board is empty
+        if (loaded.isEmpty()) {
+            // The global row is written last: without it no group snapshot of the date is complete
+            if (!snapshotRepo.existsByScopeAndScopeIdAndDate(Scope.GLOBAL, 0L, date)) {
+                rememberMissing(date);
+                return Optional.empty();
+            }
+            loaded = Optional.of(RankedSnapshot.EMPTY);
+        }
+        return loaded.map(s -> put(groups, key, s));
+    }
+
+    private boolean knownMissing(LocalDate date) {
+        Long until;
+        synchronized (missingUntil) {
+            until = missingUntil.get(date);
+        }
+        return until != null && System.nanoTime() - until < 0;
+    }
+
+    private void rememberMissing(LocalDate date) {
+        synchronized (missingUntil) {
+            missingUntil.put(date, System.nanoTime() + missingTtlNanos);
+        }
+    }
+
+    private static RankedSnapshot get(Map<Key, RankedSnapshot> cache, Key key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static RankedSnapshot put(Map<Key, RankedSnapshot> cache, Key key, RankedSnapshot snapshot) {
+        synchronized (cache) {
+            cache.put(key, snapshot);
+        }
+        return snapshot;
+    }
+
+    private static <K, V> Map<K, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
@@ -0,0 +1,432 @@
+package com.stepapp.steps;
+
+import com.stepapp.friend.FriendService;
+import com.stepapp.group.GroupMemberRepository;
+import com.stepapp.group.GroupMembershipChangedEvent;
+import com.stepapp.group.GroupRepository;
+import com.stepapp.steps.dto.LeaderboardEntryDto;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Server-sent event subscriptions to the friends leaderboard of a user or the leaderboard of a group, for one date.
+ * <p>
+ * Subscriptions to the same leaderboard share a topic that knows the users appearing on it. After an upload
+ * (or a re-bucketing run) commits, the topics of that user are marked dirty; a dirty topic is rendered once per
+ * {@code coalesce-window} and offered to every subscriber, so a burst of uploads produces one message, and a
+ * subscriber only gets one when its top N actually changed.
+ * <p>
+ * Delivery is conflated: per subscriber at most one send is in flight and only the newest unsent snapshot is
+ * kept, so a slow client costs one buffered message rather than a growing queue. A client whose send has been
+ * stuck for {@code send-timeout} is disconnected. Idle connections hold no thread (async servlet requests) and
+ * get a comment heartbeat every {@code heartbeat-interval}, which also detects closed clients.
+ * <p>
+ * Uploads committed on any node reach the topics: this node's own through the in-process event after commit,
+ * other nodes' through {@link DailyTotalsNotifications} (Postgres LISTEN/NOTIFY), typically within a second
+ * plus the coalesce window. If this node's listening connection drops, notifications sent meanwhile are lost and
+ * every open topic is re-rendered once it is back, so a change can be delayed but is not missed for good.
+ * <p>
+ * Group membership changes made on this node apply immediately; those made on other nodes, like friend lists
+ * (read when subscribing), apply when the topic is reopened. Streams end after {@code timeout}, so reconnecting
+ * clients pick up both.
+ */
+@Component
+@Slf4j
+class LeaderboardStreams {
+
+    enum Kind { FRIENDS, GROUP }
+
+    record Topic(Kind kind, long id, LocalDate date) {}
+
+    private static final Object HEARTBEAT = new Object();
+
+    private static final class TopicState {
+        final Topic topic;
+        final Set<Long> members = ConcurrentHashMap.newKeySet();
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+        TopicState(Topic topic) {
+            this.topic = topic;
+        }
+    }
+
+    private static final class Subscriber {
+        final TopicState topic;
+        final int top;
+        final SseEmitter emitter;
+
+        // Guarded by this
+        Object pending;
+        Object lastOffered;
+        boolean sending;
+        boolean closed;
+        long sendStartedNanos;
+
+        Subscriber(TopicState topic, int top, SseEmitter emitter) {
+            this.topic = topic;
+            this.top = top;
+            this.emitter = emitter;
+        }
+    }
+
+    private final StepService stepService;
+    private final UserService userService;
+    private final FriendService friendService;
+    private final GroupRepository groupRepository;
+    private final GroupMemberRepository memberRepo;
+    private final long coalesceWindowMillis;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int maxSubscribers;
+
+    private final Map<Topic, TopicState> topics = new ConcurrentHashMap<>();
+    private final Map<Long, Set<TopicState>> topicsByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService senders;
+
+    private final Counter updatesSent;
+    private final Counter heartbeatsSent;
+    private final Counter droppedSlow;
+    private final Counter droppedFailed;
+
+    LeaderboardStreams(
+            StepService stepService,
+            UserService userService,
+            FriendService friendService,
+            GroupRepository groupRepository,
+            GroupMemberRepository memberRepo,
+            MeterRegistry meterRegistry,
+            @Value("${steps.leaderboard.streams.coalesce-window:PT2S}") Duration coalesceWindow,
+            @Value("${steps.leaderboard.streams.timeout:PT30M}") Duration timeout,
+            @Value("${steps.leaderboard.streams.send-timeout:PT30S}") Duration sendTimeout,
+            @Value("${steps.leaderboard.streams.max-subscribers:50000}") int maxSubscribers,
+            @Value("${steps.leaderboard.streams.flush-threads:2}") int flushThreads,
+            @Value("${steps.leaderboard.streams.send-threads:8}") int sendThreads
+    ) {
+        this.stepService = stepService;
+        this.userService = userService;
+        this.friendService = friendService;
+        this.groupRepository = groupRepository;
+        this.memberRepo = memberRepo;
+        this.coalesceWindowMillis = coalesceWindow.toMillis();
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.maxSubscribers = maxSubscribers;
+
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.flusher = Executors.newScheduledThreadPool(Math.max(1, flushThreads), r -> {
+            Thread t = new Thread(r, "leaderboard-stream-flush-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.senders = Executors.newFixedThreadPool(Math.max(1, sendThreads), r -> {
+            Thread t = new Thread(r, "leaderboard-stream-send-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Gauge.builder("steps.leaderboard.streams.subscribers", subscriberCount, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("steps.leaderboard.streams.topics", topics, Map::size).register(meterRegistry);
+        this.updatesSent = Counter.builder("steps.leaderboard.streams.messages").tag("type", "update").register(meterRegistry);
+        this.heartbeatsSent = Counter.builder("steps.leaderboard.streams.messages").tag("type", "heartbeat").register(meterRegistry);
+        this.droppedSlow = Counter.builder("steps.leaderboard.streams.dropped").tag("reason", "slow").register(meterRegistry);
+        this.droppedFailed = Counter.builder("steps.leaderboard.streams.dropped").tag("reason", "failed").register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        flusher.shutdownNow();
+        senders.shutdownNow();
+        for (TopicState s : topics.values()) {
+            for (Subscriber sub : s.subscribers) close(sub);
+        }
+    }
+
+    /**
+     * Stream of the user's friends leaderboard on a local date (default: their today).
+     */
+    SseEmitter subscribeFriends(String username, LocalDate date, int top) {
+        User user = userService.getByUsernameOrThrow(username);
+        LocalDate day = date != null ? date : LocalDate.now(StepService.userZone(user));
+        Topic topic = new Topic(Kind.FRIENDS, user.getId(), day);
+        return subscribe(topic, top, () -> {
+            List<Long> members = new ArrayList<>(friendService.friendIds(user.getId()).toList());
+            members.add(user.getId());
+            return members;
+        });
+    }
+
+    /**
+     * Stream of a group's leaderboard on a local date (default: the caller's today). The group must exist.
+     */
+    SseEmitter subscribeGroup(String username, Long groupId, LocalDate date, int top) {
+        if (!groupRepository.existsById(groupId)) {
+            throw new NoSuchElementException("Group not found");
+        }
+        LocalDate day = date != null ? date : LocalDate.now(StepService.userZone(userService.getByUsernameOrThrow(username)));
+        return subscribe(new Topic(Kind.GROUP, groupId, day), top, () -> memberRepo.findUserIdsByGroupId(groupId));
+    }
+
+    private SseEmitter subscribe(Topic topic, int top, Supplier<Collection<Long>> memberLoader) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new StreamCapacityExceededException("Too many leaderboard streams, retry later");
+        }
+        Subscriber sub;
+        try {
+            sub = join(topic, Math.min(Math.max(1, top), StepService.MAX_GLOBAL_LIMIT), memberLoader);
+        } catch (RuntimeException e) {
+            subscriberCount.decrementAndGet();
+            throw e;
+        }
+        sub.emitter.onCompletion(() -> remove(sub));
+        sub.emitter.onTimeout(() -> close(sub));
+        sub.emitter.onError(e -> close(sub));
+        try {
+            // Initial snapshot, then changes only
+            offer(sub, render(topic, sub.top));
+        } catch (RuntimeException e) {
+            close(sub);
+            throw e;
+        }
+        return sub.emitter;
+    }
+
+    private Subscriber join(Topic topic, int top, Supplier<Collection<Long>> memberLoader) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Collection<Long> members = null;
+        while (true) {
+            // Members are loaded outside the map lock, and only for a topic that is not open yet
+            if (members == null && !topics.containsKey(topic)) members = memberLoader.get();
+            Collection<Long> loaded = members;
+            Subscriber[] joined = new Subscriber[1];
+            topics.compute(topic, (t, existing) -> {
+                TopicState state = existing;
+                if (state == null) {
+                    if (loaded == null) return null; // closed meanwhile; load and retry
+                    state = new TopicState(t);
+                    for (Long userId : loaded) index(state, userId);
+                }
+                joined[0] = new Subscriber(state, top, emitter);
+                state.subscribers.add(joined[0]);
+                return state;
+            });
+            if (joined[0] != null) return joined[0];
+        }
+    }
+
+    /**
+     * Marks the topics showing the user on a date in the event's range dirty. Called after commit for writes of
+     * this node and by {@link DailyTotalsNotifications} for writes of other nodes.
+     */
+    @TransactionalEventListener
+    void onDailyTotalsChanged(DailyTotalsChangedEvent event) {
+        Set<TopicState> states = topicsByUser.get(event.userId());
+        if (states == null) return;
+        for (TopicState s : states) {
+            LocalDate date = s.topic.date();
+            if (!date.isBefore(event.from()) && !date.isAfter(event.to())) markDirty(s);
+        }
+    }
+
+    /**
+     * Marks every open topic dirty, for changes that may have been missed.
+     */
+    void markAllDirty() {
+        for (TopicState s : topics.values()) markDirty(s);
+    }
+
+    @TransactionalEventListener
+    void onMembershipChanged(GroupMembershipChangedEvent event) {
+        // Membership changes are rare; scanning the open topics is cheaper than another index
+        for (TopicState s : topics.values()) {
+            if (s.topic.kind() != Kind.GROUP || s.topic.id() != event.groupId()) continue;
+            switch (event.change()) {
+                case JOINED -> index(s, event.userId());
+                case LEFT -> unindex(s, event.userId());
+                case GROUP_DELETED -> {
+                    for (Subscriber sub : s.subscribers) close(sub);
+                    continue;
+                }
+            }
+            markDirty(s);
+        }
+    }
+
+    /**
+     * Heartbeat for idle subscribers; disconnects those whose send has been stuck too long.
+     */
+    @Scheduled(fixedDelayString = "${steps.leaderboard.streams.heartbeat-interval:PT30S}")
+    void heartbeat() {
+        long now = System.nanoTime();
+        for (TopicState s : topics.values()) {
+            for (Subscriber sub : s.subscribers) {
+                boolean stalled;
+                synchronized (sub) {
+                    stalled = sub.sending && now - sub.sendStartedNanos > sendTimeoutNanos;
+                }
+                if (stalled) {
+                    droppedSlow.increment();
+                    close(sub);
+                } else {
+                    offer(sub, HEARTBEAT);
+                }
+            }
+        }
+    }
+
+    private void markDirty(TopicState s) {
+        if (s.flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(() -> flush(s), coalesceWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(TopicState s) {
+        // Cleared before rendering: a change that lands during the render schedules the next flush
+        s.flushScheduled.set(false);
+        if (s.subscribers.isEmpty()) return;
+        int top = 0;
+        for (Subscriber sub : s.subscribers) top = Math.max(top, sub.top);
+        List<LeaderboardEntryDto> entries;
+        try {
+            entries = render(s.topic, top);
+        } catch (RuntimeException e) {
+            log.warn("Rendering leaderboard stream {} failed", s.topic, e);
+            return;
+        }
+        for (Subscriber sub : s.subscribers) {
+            offer(sub, entries.size() > sub.top ? List.copyOf(entries.subList(0, sub.top)) : entries);
+        }
+    }
+
+    private List<LeaderboardEntryDto> render(Topic topic, int top) {
+        var page = switch (topic.kind()) {
+            case FRIENDS -> stepService.friendsPage(topic.id(), topic.date(), null, null, LeaderboardCursor.FIRST, top);
+            case GROUP -> stepService.groupPage(topic.id(), topic.date(), null, null, LeaderboardCursor.FIRST, top);
+        };
+        return page.entries();
+    }
+
+    /**
+     * Hands a message to the subscriber's sender, replacing any older unsent one.
+     * Heartbeats are only sent to idle subscribers; snapshots equal to the previous one are skipped.
+     */
+    private void offer(Subscriber sub, Object message) {
+        synchronized (sub) {
+            if (sub.closed) return;
+            if (message == HEARTBEAT) {
+                if (sub.sending || sub.pending != null) return;
+            } else {
+                if (message.equals(sub.lastOffered)) return;
+                sub.lastOffered = message;
+            }
+            sub.pending = message;
+            if (sub.sending) return;
+            sub.sending = true;
+        }
+        try {
+            senders.execute(() -> drain(sub));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            synchronized (sub) {
+                sub.sending = false;
+            }
+        }
+    }
+
+    private void drain(Subscriber sub) {
+        while (true) {
+            Object message;
+            synchronized (sub) {
+                message = sub.pending;
+                sub.pending = null;
+                if (message == null || sub.closed) {
+                    sub.sending = false;
+                    return;
+                }
+                sub.sendStartedNanos = System.nanoTime();
+            }
+            try {
+                if (message == HEARTBEAT) {
+                    sub.emitter.send(SseEmitter.event().comment("ping"));
+                    heartbeatsSent.increment();
+                } else {
+                    sub.emitter.send(SseEmitter.event().name("leaderboard").data(message, MediaType.APPLICATION_JSON));
+                    updatesSent.increment();
+                }
+            } catch (Exception e) {
+                // Client went away (IOException) or the emitter already completed
+                droppedFailed.increment();
+                synchronized (sub) {
+                    sub.sending = false;
+                }
+                close(sub);
+                return;
+            }
+        }
+    }
+
+    private void close(Subscriber sub) {
+        if (!remove(sub)) return;
+        try {
+            sub.emitter.complete();
+        } catch (RuntimeException ignored) {
+            // Already completed by the container
+        }
+    }
+
+    private boolean remove(Subscriber sub) {
+        synchronized (sub) {
+            if (sub.closed) return false;
+            sub.closed = true;
+            sub.pending = null;
+        }
+        subscriberCount.decrementAndGet();
+        TopicState state = sub.topic;
+        state.subscribers.remove(sub);
+        topics.computeIfPresent(state.topic, (t, current) -> {
+            if (current != state || !current.subscribers.isEmpty()) return current;
+            for (Long userId : current.members) unindex(current, userId);
+            return null;
+        });
+        return true;
+    }
+
+    private void index(TopicState state, Long userId) {
+        state.members.add(userId);
+        topicsByUser.compute(userId, (id, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(state);
+            return set;
+        });
+    }
+
+    private void unindex(TopicState state, Long userId) {
+        state.members.remove(userId);
+        topicsByUser.computeIfPresent(userId, (id, set) -> {
+            set.remove(state);
+            return set.isEmpty() ? null : set;
+        });
+    }
+}
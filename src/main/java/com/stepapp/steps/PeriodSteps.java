@@ -0,0 +1,61 @@
+package com.stepapp.steps;
+
+import com.stepapp.user.User;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Step totals per ISO week (starting Monday) or calendar month, derived from daily totals.
+ */
+@Entity
+@Table(name = "period_steps", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"user_id", "period", "period_start"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PeriodSteps {
+
+    public enum Period {
+        WEEK, MONTH;
+
+        public LocalDate startOf(LocalDate date) {
+            return this == WEEK
+                    ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    : date.withDayOfMonth(1);
+        }
+
+        public LocalDate endOf(LocalDate date) {
+            return this == WEEK ? startOf(date).plusDays(6) : date.with(TemporalAdjusters.lastDayOfMonth());
+        }
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Period period;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    @Builder.Default
+    @Column(name = "steps_total", nullable = false)
+    private Long stepsTotal = 0L;
+
+    @Column(name = "updated_at", nullable = false)
+    private OffsetDateTime updatedAt;
+}
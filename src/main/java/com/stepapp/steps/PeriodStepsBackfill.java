@@ -0,0 +1,31 @@
+package com.stepapp.steps;
+
+import com.stepapp.common.db.StartupMigrations;
+import com.stepapp.common.db.StartupMigrations.Migration;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+/**
+ * Seeds weekly/monthly rollups from existing daily totals, once (see {@link StartupMigrations}).
+ * Uploads write daily_steps before period_steps in the same transaction, so with daily_steps locked no
+ * increment is summed from daily_steps and added to period_steps again.
+ */
+@Component
+class PeriodStepsBackfill {
+
+    private static final long ADVISORY_LOCK_KEY = 0x5065_7269_6F64_4266L; // "PeriodBf"
+
+    private final StartupMigrations migrations;
+    private final PeriodStepsRepository periodRepo;
+
+    PeriodStepsBackfill(StartupMigrations migrations, PeriodStepsRepository periodRepo) {
+        this.migrations = migrations;
+        this.periodRepo = periodRepo;
+    }
+
+    @PostConstruct
+    void backfill() {
+        migrations.runOnce(new Migration("period-steps-from-daily", ADVISORY_LOCK_KEY, "daily_steps",
+                "SELECT NOT EXISTS (SELECT 1 FROM period_steps)", periodRepo::backfillFromDailyIfEmpty));
+    }
+}
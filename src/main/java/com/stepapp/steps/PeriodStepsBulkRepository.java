@@ -0,0 +1,26 @@
+package com.stepapp.steps;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Atomic write path for weekly/monthly rollups.
+ */
+public interface PeriodStepsBulkRepository {
+
+    /**
+     * Folds per-day increments into the matching week and month rows in one upsert statement.
+     */
+    void addToTotals(Long userId, Map<LocalDate, Long> dailyIncrements);
+
+    /**
+     * One-off fill of period_steps from daily_steps when the rollup table is still empty.
+     * Returns the number of rows written.
+     */
+    int backfillFromDailyIfEmpty();
+
+    /**
+     * Recomputes all weekly/monthly rows of one user from their daily_steps rows.
+     */
+    void rebuildFromDaily(Long userId);
+}
@@ -0,0 +1,89 @@
+package com.stepapp.steps;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+@RequiredArgsConstructor
+class PeriodStepsBulkRepositoryImpl implements PeriodStepsBulkRepository {
+
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO period_steps (user_id, period, period_start, steps_total, updated_at)
+            VALUES\s""";
+
+    private static final String UPSERT_SUFFIX = """
+             ON CONFLICT (user_id, period, period_start) DO UPDATE
+            SET steps_total = period_steps.steps_total + EXCLUDED.steps_total,
+                updated_at = EXCLUDED.updated_at""";
+
+    private static final String BACKFILL = """
+            INSERT INTO period_steps (user_id, period, period_start, steps_total, updated_at)
+            SELECT user_id, 'WEEK', date_trunc('week', date)::date, SUM(steps_total), now()
+            FROM daily_steps GROUP BY user_id, date_trunc('week', date)
+            UNION ALL
+            SELECT user_id, 'MONTH', date_trunc('month', date)::date, SUM(steps_total), now()
+            FROM daily_steps GROUP BY user_id, date_trunc('month', date)""";
+
+    private static final String REBUILD_FOR_USER = """
+            INSERT INTO period_steps (user_id, period, period_start, steps_total, updated_at)
+            SELECT user_id, 'WEEK', date_trunc('week', date)::date, SUM(steps_total), now()
+            FROM daily_steps WHERE user_id = ? GROUP BY user_id, date_trunc('week', date)
+            UNION ALL
+            SELECT user_id, 'MONTH', date_trunc('month', date)::date, SUM(steps_total), now()
+            FROM daily_steps WHERE user_id = ? GROUP BY user_id, date_trunc('month', date)""";
+
+    private record PeriodKey(PeriodSteps.Period period, LocalDate start) implements Comparable<PeriodKey> {
+        @Override
+        public int compareTo(PeriodKey o) {
+            int c = period.compareTo(o.period);
+            return c != 0 ? c : start.compareTo(o.start);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void addToTotals(Long userId, Map<LocalDate, Long> dailyIncrements) {
+        if (dailyIncrements.isEmpty()) return;
+
+        // Sorted so rows are always locked in the same order
+        Map<PeriodKey, Long> byPeriod = new TreeMap<>();
+        for (var e : dailyIncrements.entrySet()) {
+            for (var p : PeriodSteps.Period.values()) {
+                byPeriod.merge(new PeriodKey(p, p.startOf(e.getKey())), e.getValue(), Long::sum);
+            }
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        List<Object> args = new ArrayList<>(byPeriod.size() * 5);
+        for (var e : byPeriod.entrySet()) {
+            if (!args.isEmpty()) sql.append(',');
+            sql.append("(?,?,?,?,?)");
+            args.add(userId);
+            args.add(e.getKey().period().name());
+            args.add(e.getKey().start());
+            args.add(e.getValue());
+            args.add(now);
+        }
+        sql.append(UPSERT_SUFFIX);
+
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    @Override
+    public int backfillFromDailyIfEmpty() {
+        Boolean empty = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM period_steps)", Boolean.class);
+        if (!Boolean.TRUE.equals(empty)) return 0;
+        return jdbcTemplate.update(BACKFILL);
+    }
+
+    @Override
+    public void rebuildFromDaily(Long userId) {
+        jdbcTemplate.update("DELETE FROM period_steps WHERE user_id = ?", userId);
+        jdbcTemplate.update(REBUILD_FOR_USER, userId, userId);
+    }
+}
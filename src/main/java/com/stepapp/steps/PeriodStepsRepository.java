@@ -0,0 +1,12 @@
+package com.stepapp.steps;
+
+import com.stepapp.user.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface PeriodStepsRepository extends JpaRepository<PeriodSteps, Long>, PeriodStepsBulkRepository {
+    List<PeriodSteps> findAllByUserAndPeriodAndPeriodStartBetweenOrderByPeriodStart(
+            User user, PeriodSteps.Period period, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,16 @@
+package com.stepapp.steps;
+
+import com.stepapp.user.User;
+
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * A validated upload ready to be written: insert candidates plus the count of samples rejected by validation.
+ */
+record PreparedUpload(
+        User user,
+        ZoneId zone,
+        List<StepSample> samples,
+        int rejected
+) {}
@@ -0,0 +1,134 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.StepSampleBulkRepository.SampleInterval;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Incremental cross-provider reconciliation of daily totals.
+ * <p>
+ * When an upload inserts samples, only the time window they cover is re-evaluated: the reconciled
+ * contributions of every sample overlapping that window are computed with and without the new
+ * samples, and the per-day difference is what gets added to daily_steps. A sample from a better
+ * provider may therefore lower the contribution of samples stored earlier.
+ * <p>
+ * Must run in the writing transaction after the samples were inserted and while
+ * {@link StepSampleBulkRepository#lockUser} is held.
+ */
+@Component
+class ProviderOverlapReconciler {
+
+    private final StepSampleRepository sampleRepo;
+    private final int[] priorityByProvider;
+    private final int priorities;
+
+    ProviderOverlapReconciler(
+            StepSampleRepository sampleRepo,
+            @Value("${steps.reconcile.provider-priority:APPLE,GOOGLE,DEVICE,MOCK}") List<String> providerPriority
+    ) {
+        this.sampleRepo = sampleRepo;
+        StepSample.Provider[] all = StepSample.Provider.values();
+        this.priorityByProvider = new int[all.length];
+        Arrays.fill(priorityByProvider, -1);
+        int next = 0;
+        for (String name : providerPriority) {
+            var p = StepService.parseProvider(name.trim());
+            if (priorityByProvider[p.ordinal()] < 0) priorityByProvider[p.ordinal()] = next++;
+        }
+        // Unlisted providers rank last, in declaration order
+        for (var p : all) {
+            if (priorityByProvider[p.ordinal()] < 0) priorityByProvider[p.ordinal()] = next++;
+        }
+        this.priorities = next;
+    }
+
+    /**
+     * Change of reconciled contributions caused by the freshly inserted samples of one user,
+     * one entry per sample whose contribution changed.
+     */
+    List<StepDelta> sampleDeltas(Long userId, List<StepSample> inserted) {
+        if (inserted.isEmpty()) return List.of();
+
+        OffsetDateTime from = inserted.get(0).getStartedAt(), to = inserted.get(0).getEndedAt();
+        Set<Long> newIds = new HashSet<>(inserted.size() * 2);
+        for (var s : inserted) {
+            if (s.getStartedAt().isBefore(from)) from = s.getStartedAt();
+            if (s.getEndedAt().isAfter(to)) to = s.getEndedAt();
+            newIds.add(s.getId());
+        }
+
+        // Samples whose contribution can change: everything overlapping the new samples' window
+        List<SampleInterval> affected = sampleRepo.findIntervals(userId, from, to);
+        if (singleProvider(affected)) {
+            return StepDelta.of(inserted);
+        }
+
+        // Their contributions also depend on whatever overlaps *them*, so widen once more
+        OffsetDateTime wideFrom = from, wideTo = to;
+        for (var s : affected) {
+            if (s.startedAt().isBefore(wideFrom)) wideFrom = s.startedAt();
+            if (s.endedAt().isAfter(wideTo)) wideTo = s.endedAt();
+        }
+        List<SampleInterval> context = wideFrom.equals(from) && wideTo.equals(to)
+                ? affected
+                : sampleRepo.findIntervals(userId, wideFrom, wideTo);
+
+        int n = context.size();
+        long[] start = new long[n], end = new long[n], steps = new long[n];
+        int[] priority = new int[n];
+        boolean[] withoutNew = new boolean[n];
+        Set<Long> affectedIds = new HashSet<>(affected.size() * 2);
+        for (var s : affected) affectedIds.add(s.id());
+        for (int i = 0; i < n; i++) {
+            var s = context.get(i);
+            start[i] = s.startedAt().toInstant().toEpochMilli();
+            end[i] = s.endedAt().toInstant().toEpochMilli();
+            steps[i] = s.steps();
+            priority[i] = priorityByProvider[s.provider().ordinal()];
+            withoutNew[i] = !newIds.contains(s.id());
+        }
+
+        var reconciler = new IntervalReconciler(start, end, priority, steps, priorities);
+        long[] after = reconciler.contributions(null);
+        long[] before = reconciler.contributions(withoutNew);
+
+        List<StepDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            var s = context.get(i);
+            long delta = after[i] - before[i];
+            if (delta == 0 || !affectedIds.contains(s.id())) continue;
+            deltas.add(new StepDelta(s.startedAt(), delta));
+        }
+        return deltas;
+    }
+
+    /**
+     * Reconciled contribution of every sample of a self-contained cluster (no sample outside it
+     * overlaps any sample in it), in list order. Used when rebuilding totals from scratch.
+     */
+    long[] contributions(List<SampleInterval> cluster) {
+        int n = cluster.size();
+        long[] start = new long[n], end = new long[n], steps = new long[n];
+        int[] priority = new int[n];
+        for (int i = 0; i < n; i++) {
+            var s = cluster.get(i);
+            start[i] = s.startedAt().toInstant().toEpochMilli();
+            end[i] = s.endedAt().toInstant().toEpochMilli();
+            steps[i] = s.steps();
+            priority[i] = priorityByProvider[s.provider().ordinal()];
+        }
+        // Same shortcut as sampleDeltas: a single provider never suppresses itself
+        if (singleProvider(cluster)) return steps;
+        return new IntervalReconciler(start, end, priority, steps, priorities).contributions(null);
+    }
+
+    private static boolean singleProvider(List<SampleInterval> samples) {
+        for (int i = 1; i < samples.size(); i++) {
+            if (samples.get(i).provider() != samples.get(0).provider()) return false;
+        }
+        return true;
+    }
+}
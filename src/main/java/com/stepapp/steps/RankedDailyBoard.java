@@ -0,0 +1,231 @@
+package com.stepapp.steps;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ranked totals of one date: a concurrent skip list ordered by (steps desc, userId asc) for top-N scans,
+ * a lock-free Fenwick tree of user counts per step value for O(log n) rank lookups, and a
+ * {@link StepsHistogram} of the same totals for percentile answers. Totals above {@link #STEP_CAP} go to a
+ * small overflow Fenwick tree of log-linear buckets (64 per power of two); a rank there counts the higher
+ * buckets in the tree and only the users sharing its bucket (within 1/64 of the total) on the skip list.
+ * <p>
+ * The Fenwick tree is a fixed 2 MB array whatever the board size, so small boards (groups) are built
+ * without it and without the histogram: their ranks are counted on the skip list, which is cheap for a
+ * few hundred members.
+ * <p>
+ * Updates of one user are serialized by the per-key lock of {@link ConcurrentHashMap#compute}; different
+ * users update in parallel. Every update carries the absolute total and a sequence number, and only
+ * a newer sequence replaces a value, so late or reordered notifications cannot move a user backwards.
+ * Ranks use competition ranking: users with equal totals share a rank.
+ */
+final class RankedDailyBoard {
+
+    // Largest total with its own slot in the exact Fenwick tree; larger ones go to the overflow tree
+    static final int STEP_CAP = (1 << 18) - 1;
+    private static final int OVERFLOW_SUB_BITS = 6;
+    private static final int OVERFLOW_MIN_EXPONENT = 18;
+    private static final int OVERFLOW_BUCKETS = (63 - OVERFLOW_MIN_EXPONENT) << OVERFLOW_SUB_BITS;
+
+    /** Seeded values rank below any live update. */
+    static final long SEED_SEQUENCE = 0;
+
+    record Entry(long userId, long steps) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry o) {
+            int c = Long.compare(o.steps, steps);
+            return c != 0 ? c : Long.compare(userId, o.userId);
+        }
+    }
+
+    record Ranked(long rank, long userId, long steps) {}
+
+    private record Slot(long steps, long sequence) {}
+
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ordered = new ConcurrentSkipListSet<>();
+    private final AtomicLongArray fenwick; // 1-based, one slot per step value; null on small boards
+    private final AtomicLongArray overflow; // 1-based, one slot per log-linear bucket above STEP_CAP
+    private final StepsHistogram histogram;
+    private volatile boolean seeded;
+
+    RankedDailyBoard() {
+        this(true);
+    }
+
+    /**
+     * @param indexed whether to keep the Fenwick tree and histogram; without them ranks cost O(rank)
+     *                and {@link #histogram()} is unavailable
+     */
+    RankedDailyBoard(boolean indexed) {
+        this.fenwick = indexed ? new AtomicLongArray(STEP_CAP + 2) : null;
+        this.overflow = indexed ? new AtomicLongArray(OVERFLOW_BUCKETS + 1) : null;
+        this.histogram = indexed ? new StepsHistogram() : null;
+    }
+
+    boolean isSeeded() {
+        return seeded;
+    }
+
+    void markSeeded() {
+        seeded = true;
+    }
+
+    /**
+     * Seed value from a database snapshot; ignored when the user already got a live update.
+     */
+    void seed(long userId, long steps) {
+        slots.compute(userId, (id, old) -> {
+            if (old != null) return old;
+            insert(userId, steps);
+            return new Slot(steps, SEED_SEQUENCE);
+        });
+    }
+
+    /**
+     * Sets the user's total, unless a newer sequence was applied already.
+     */
+    void set(long userId, long steps, long sequence) {
+        slots.compute(userId, (id, old) -> {
+            if (old != null && old.sequence() >= sequence) return old;
+            if (old != null) {
+                if (old.steps() == steps) return new Slot(steps, sequence);
+                delete(userId, old.steps());
+            }
+            insert(userId, steps);
+            return new Slot(steps, sequence);
+        });
+    }
+
+    /**
+     * Removes the user (their daily row no longer exists), unless a newer sequence was applied already.
+     */
+    void remove(long userId, long sequence) {
+        slots.computeIfPresent(userId, (id, old) -> {
+            if (old.sequence() >= sequence) return old;
+            delete(userId, old.steps());
+            return null;
+        });
+    }
+
+    /**
+     * Distribution of this date's totals, kept in step with the board.
+     */
+    StepsHistogram histogram() {
+        if (histogram == null) throw new IllegalStateException("Board is not indexed");
+        return histogram;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    /**
+     * Competition rank of the user, or -1 when they have no total on this date.
+     */
+    long rankOf(long userId) {
+        Slot s = slots.get(userId);
+        return s == null ? -1 : rankOfSteps(s.steps());
+    }
+
+    long stepsOf(long userId) {
+        Slot s = slots.get(userId);
+        return s == null ? -1 : s.steps();
+    }
+
+    /**
+     * The first {@code limit} users, best first.
+     */
+    List<Ranked> top(int limit) {
+        List<Ranked> out = new ArrayList<>(Math.min(limit, 1024));
+        long prevSteps = Long.MIN_VALUE, rank = 0;
+        Iterator<Entry> it = ordered.iterator();
+        for (int i = 0; i < limit && it.hasNext(); i++) {
+            Entry e = it.next();
+            // Everyone before a new total is strictly ahead; followers with equal totals share the rank
+            if (e.steps() != prevSteps) {
+                rank = i + 1;
+                prevSteps = e.steps();
+            }
+            out.add(new Ranked(rank, e.userId(), e.steps()));
+        }
+        return out;
+    }
+
+    /**
+     * Up to {@code limit} entries strictly after (steps, userId) in board order, for keyset pages.
+     * Starts from a skip list seek, so a deep page costs the same as the first.
+     */
+    List<Entry> after(long steps, long userId, int limit) {
+        List<Entry> out = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<Entry> it = ordered.tailSet(new Entry(userId, steps), false).iterator();
+        while (out.size() < limit && it.hasNext()) out.add(it.next());
+        return out;
+    }
+
+    private long rankOfSteps(long steps) {
+        if (fenwick == null) {
+            // Small board: count the few users above this total directly
+            return ordered.headSet(new Entry(Long.MIN_VALUE, steps)).size() + 1;
+        }
+        long aboveCap = prefix(overflow, OVERFLOW_BUCKETS);
+        if (steps <= STEP_CAP) {
+            long atOrBelow = prefix(fenwick, bucket(steps));
+            long total = prefix(fenwick, STEP_CAP + 1);
+            return total - atOrBelow + aboveCap + 1;
+        }
+        int b = overflowBucket(steps);
+        long upper = overflowUpperBound(b);
+        long sameBucketAbove = upper == steps ? 0
+                : ordered.subSet(new Entry(Long.MIN_VALUE, upper), new Entry(Long.MIN_VALUE, steps)).size();
+        return aboveCap - prefix(overflow, b) + sameBucketAbove + 1;
+    }
+
+    private void insert(long userId, long steps) {
+        ordered.add(new Entry(userId, steps));
+        if (fenwick == null) return;
+        if (steps > STEP_CAP) add(overflow, overflowBucket(steps), 1);
+        else add(fenwick, bucket(steps), 1);
+        histogram.add(steps);
+    }
+
+    private void delete(long userId, long steps) {
+        ordered.remove(new Entry(userId, steps));
+        if (fenwick == null) return;
+        if (steps > STEP_CAP) add(overflow, overflowBucket(steps), -1);
+        else add(fenwick, bucket(steps), -1);
+        histogram.remove(steps);
+    }
+
+    private static int bucket(long steps) {
+        return (int) Math.max(0, Math.min(steps, STEP_CAP)) + 1;
+    }
+
+    // 1-based overflow slot of a total above STEP_CAP: its power of two, then its top 6 bits below the leading one
+    private static int overflowBucket(long steps) {
+        int exponent = 63 - Long.numberOfLeadingZeros(steps);
+        int sub = (int) (steps >>> (exponent - OVERFLOW_SUB_BITS)) & ((1 << OVERFLOW_SUB_BITS) - 1);
+        return ((exponent - OVERFLOW_MIN_EXPONENT) << OVERFLOW_SUB_BITS) + sub + 1;
+    }
+
+    private static long overflowUpperBound(int bucket) {
+        int exponent = ((bucket - 1) >> OVERFLOW_SUB_BITS) + OVERFLOW_MIN_EXPONENT;
+        int sub = (bucket - 1) & ((1 << OVERFLOW_SUB_BITS) - 1);
+        int shift = exponent - OVERFLOW_SUB_BITS;
+        return ((long) ((1 << OVERFLOW_SUB_BITS) + sub) << shift) + ((1L << shift) - 1);
+    }
+
+    private static void add(AtomicLongArray tree, int i, long delta) {
+        for (; i < tree.length(); i += i & -i) tree.getAndAdd(i, delta);
+    }
+
+    private static long prefix(AtomicLongArray tree, int i) {
+        long sum = 0;
+        for (; i > 0; i -= i & -i) sum += tree.get(i);
+        return sum;
+    }
+}
@@ -0,0 +1,173 @@
+package com.stepapp.steps;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable ranked totals of a finished day, decoded from a leaderboard_snapshots payload. Entries are kept in
+ * leaderboard order (steps desc, userId asc), so pages and ranks are binary searches and nothing is re-sorted.
+ *
+ * <pre>
+ * payload : "RNK1" count:varint topSteps:varint entry*
+ * entry   : stepsDrop:varint userIdDelta:zigzag
+ * </pre>
+ * stepsDrop is the previous entry's total minus this one (the first entry's relative to topSteps), so runs of
+ * equal or close totals take a byte each; user ids are deltas to the previous entry's id.
+ */
+final class RankedSnapshot {
+
+    static final RankedSnapshot EMPTY = new RankedSnapshot(new long[0], new long[0]);
+
+    private static final byte[] MAGIC = {'R', 'N', 'K', '1'};
+
+    private final long[] userIds;
+    private final long[] steps;
+    private volatile IdIndex idIndex;
+
+    private RankedSnapshot(long[] userIds, long[] steps) {
+        this.userIds = userIds;
+        this.steps = steps;
+    }
+
+    int size() {
+        return userIds.length;
+    }
+
+    /**
+     * Up to {@code limit} entries strictly after (afterSteps, afterUserId) in leaderboard order.
+     */
+    List<RankedDailyBoard.Entry> after(long afterSteps, long afterUserId, int limit) {
+        int from = firstAfter(afterSteps, afterUserId);
+        int to = (int) Math.min(userIds.length, (long) from + limit);
+        List<RankedDailyBoard.Entry> out = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) out.add(new RankedDailyBoard.Entry(userIds[i], steps[i]));
+        return out;
+    }
+
+    /**
+     * Competition rank of the user, or -1 when they had no total that day.
+     */
+    long rankOf(long userId) {
+        int i = indexOf(userId);
+        // Everyone before the first entry with the same total is strictly ahead
+        return i < 0 ? -1 : firstAfter(steps[i], Long.MIN_VALUE) + 1;
+    }
+
+    long stepsOf(long userId) {
+        int i = indexOf(userId);
+        return i < 0 ? -1 : steps[i];
+    }
+
+    StepsHistogram histogram() {
+        StepsHistogram h = new StepsHistogram();
+        for (long s : steps) h.add(s);
+        return h;
+    }
+
+    private int indexOf(long userId) {
+        IdIndex index = idIndex;
+        if (index == null) idIndex = index = new IdIndex(userIds); // racing builds produce equal indexes
+        return index.get(userId);
+    }
+
+    // Lowest position whose entry sorts after the key
+    private int firstAfter(long keySteps, long keyUserId) {
+        int lo = 0, hi = userIds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            boolean atOrBefore = steps[mid] != keySteps ? steps[mid] > keySteps : userIds[mid] <= keyUserId;
+            if (atOrBefore) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Encodes the first {@code count} entries, which must already be in leaderboard order.
+     */
+    static byte[] encode(long[] userIds, long[] steps, int count) {
+        try {
+            var out = new ByteArrayOutputStream(16 + count * 4);
+            out.write(MAGIC);
+            CompactSampleCodec.writeVarLong(out, count);
+            long prevSteps = count == 0 ? 0 : steps[0];
+            long prevId = 0;
+            CompactSampleCodec.writeVarLong(out, prevSteps);
+            for (int i = 0; i < count; i++) {
+                if (steps[i] > prevSteps) throw new IllegalArgumentException("Entries are not in leaderboard order");
+                CompactSampleCodec.writeVarLong(out, prevSteps - steps[i]);
+                CompactSampleCodec.writeVarLong(out, CompactSampleCodec.zigZagEncode(userIds[i] - prevId));
+                prevSteps = steps[i];
+                prevId = userIds[i];
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static RankedSnapshot decode(byte[] payload) {
+        try {
+            var in = new ByteArrayInputStream(payload);
+            if (!Arrays.equals(in.readNBytes(MAGIC.length), MAGIC)) {
+                throw new IllegalArgumentException("Not a leaderboard snapshot");
+            }
+            long count = CompactSampleCodec.readVarLong(in);
+            if (count < 0 || count > payload.length) throw new IllegalArgumentException("Corrupt leaderboard snapshot");
+            long[] userIds = new long[(int) count];
+            long[] steps = new long[(int) count];
+            long prevSteps = CompactSampleCodec.readVarLong(in);
+            long prevId = 0;
+            for (int i = 0; i < count; i++) {
+                prevSteps -= CompactSampleCodec.readVarLong(in);
+                prevId += CompactSampleCodec.zigZagDecode(CompactSampleCodec.readVarLong(in));
+                steps[i] = prevSteps;
+                userIds[i] = prevId;
+            }
+            return new RankedSnapshot(userIds, steps);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open-addressing map from user id to position; primitive arrays only, built on first lookup.
+     */
+    private static final class IdIndex {
+        private static final long FREE = Long.MIN_VALUE;
+
+        private final long[] keys;
+        private final int[] positions;
+        private final int mask;
+
+        IdIndex(long[] userIds) {
+            int capacity = Integer.highestOneBit(Math.max(1, userIds.length) * 2 - 1) << 1;
+            keys = new long[capacity];
+            positions = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, FREE);
+            for (int i = 0; i < userIds.length; i++) {
+                int slot = slot(userIds[i]);
+                while (keys[slot] != FREE) slot = (slot + 1) & mask;
+                keys[slot] = userIds[i];
+                positions[slot] = i;
+            }
+        }
+
+        int get(long userId) {
+            for (int slot = slot(userId); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == userId) return positions[slot];
+                if (keys[slot] == FREE) return -1;
+            }
+        }
+
+        private int slot(long userId) {
+            return (int) ((userId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
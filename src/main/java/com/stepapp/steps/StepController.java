@@ -2,14 +2,24 @@ package com.stepapp.steps;
 
 import com.stepapp.config.SecurityUtils;
 import com.stepapp.steps.dto.*;
+import com.stepapp.user.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.net.URI;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/steps")
@@ -17,64 +27,266 @@ import java.util.List;
 public class StepController {
 
     private final StepService stepService;
+    private final StepIngestQueue ingestQueue;
+    private final UploadIdempotencyStore idempotencyStore;
+    private final UserService userService;
+    private final StreamingUploadService streamingUploadService;
+    private final LeaderboardStreams leaderboardStreams;
+
+    // Clients may keep the response but must revalidate it (If-None-Match / If-Modified-Since) before reuse
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    // Opaque cursor of the next leaderboard page; absent on the last page
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     /**
      * Upload batch of step samples.
+     * With {@code Prefer: respond-async} the batch is validated, queued and answered with 202 and a job id.
+     * Retries carrying the same Idempotency-Key get the original response back without re-ingesting (for async
+     * uploads, the original 202 and job id without queueing the batch again); reusing a key for a different
+     * body answers 422.
      */
     @PostMapping("/upload")
-    public ResponseEntity<UploadStepsResponse> upload(
+    public ResponseEntity<?> upload(
             @Valid @RequestBody UploadStepsRequest req,
-            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = "Prefer", required = false) List<String> prefer
     ) {
         String username = SecurityUtils.getCurrentUsernameOrNull();
-        var resp = stepService.ingest(username, req);
-        return ResponseEntity.ok(resp);
+        boolean async = prefersAsync(prefer);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return async
+                    ? accepted(ingestQueue.enqueue(username, req))
+                    : ResponseEntity.ok(stepService.ingest(username, req));
+        }
+        Long userId = userService.getByUsernameOrThrow(username).getId();
+        if (async) {
+            return accepted(idempotencyStore.execute(userId, idempotencyKey, req, IngestJobDto.class,
+                    () -> ingestQueue.enqueue(username, req)));
+        }
+        return ResponseEntity.ok(idempotencyStore.execute(userId, idempotencyKey, req, UploadStepsResponse.class,
+                () -> stepService.ingest(username, req)));
+    }
+
+    private static ResponseEntity<IngestJobDto> accepted(IngestJobDto job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/steps/upload/" + job.jobId()))
+                .body(job);
+    }
+
+    /**
+     * Streaming upload: one StepSampleDto JSON object per line, written in chunks as it is read.
+     * Chunks commit as they are written, so there is no single result to replay: an Idempotency-Key is
+     * rejected with 400 (a re-sent stream is still deduplicated sample by sample).
+     */
+    @PostMapping(value = "/upload", consumes = "application/x-ndjson")
+    public ResponseEntity<UploadStepsResponse> uploadStream(
+            @RequestParam String provider,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest request
+    ) throws IOException {
+        rejectIdempotencyKey(idempotencyKey);
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return ResponseEntity.ok(streamingUploadService.ingestNdjson(username, provider, request.getInputStream()));
     }
 
     /**
-     * Daily totals for current user between dates (inclusive)
+     * Compact binary upload (see CompactSampleCodec): delta/varint-encoded samples with a per-batch source dictionary.
+     * Written in chunks like the NDJSON upload, so an Idempotency-Key is rejected the same way.
+     */
+    @PostMapping(value = "/upload", consumes = CompactSampleCodec.MEDIA_TYPE)
+    public ResponseEntity<UploadStepsResponse> uploadCompact(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest request
+    ) throws IOException {
+        rejectIdempotencyKey(idempotencyKey);
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return ResponseEntity.ok(streamingUploadService.ingestCompact(username, request.getInputStream()));
+    }
+
+    private static void rejectIdempotencyKey(String idempotencyKey) {
+        if (idempotencyKey != null) {
+            throw new IllegalArgumentException("Idempotency-Key is not supported on streaming uploads");
+        }
+    }
+
+    /**
+     * Status of an asynchronous upload; 200 with the final result once written, 202 while queued.
+     * Answered by any node (statuses are stored); a job queued on a node that crashed reports FAILED.
+     */
+    @GetMapping("/upload/{jobId}")
+    public ResponseEntity<IngestJobDto> uploadStatus(@PathVariable UUID jobId) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        var job = ingestQueue.getJob(username, jobId);
+        return "QUEUED".equals(job.status())
+                ? ResponseEntity.accepted().body(job)
+                : ResponseEntity.ok(job);
+    }
+
+    /**
+     * Totals for current user between dates (inclusive); resolution = day | week | month.
+     * Supports conditional GET: unchanged data answers 304 without loading the totals.
      */
     @GetMapping("/daily")
     public ResponseEntity<List<DailyStepsDto>> daily(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String resolution,
+            WebRequest request
+    ) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        StepResolution res = StepResolution.parse(resolution);
+        // Version is read before the data: a change in between only makes the next poll refetch
+        if (notModified(request, stepService.getDailyVersion(username, from, to, res))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(REVALIDATE).build();
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(stepService.getDaily(username, from, to, res));
+    }
+
+    /**
+     * Hourly totals (0-23, user's time zone) for one day, for intraday charts.
+     */
+    @GetMapping("/hourly")
+    public ResponseEntity<List<HourlyStepsDto>> hourly(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
     ) {
         String username = SecurityUtils.getCurrentUsernameOrNull();
-        return ResponseEntity.ok(stepService.getDaily(username, from, to));
+        return ResponseEntity.ok(stepService.getHourly(username, date));
     }
 
     /**
-     * History for 'days' days up to today.
+     * History for 'days' days up to today; resolution = day | week | month. Supports conditional GET like /daily.
      */
     @GetMapping("/history")
     public ResponseEntity<List<DailyStepsDto>> history(
-            @RequestParam(defaultValue = "30") int days
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(defaultValue = "day") String resolution,
+            WebRequest request
+    ) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        StepResolution res = StepResolution.parse(resolution);
+        if (notModified(request, stepService.getHistoryVersion(username, days, res))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(REVALIDATE).build();
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(stepService.getHistory(username, days, res));
+    }
+
+    /**
+     * Whether any Prefer header lists respond-async (RFC 7240): preferences are comma-separated, tokens are
+     * case-insensitive and may carry a value or parameters, so "wait=5, Respond-Async" counts.
+     * Comma-separated values arrive already split by Spring.
+     */
+    static boolean prefersAsync(List<String> prefer) {
+        if (prefer == null) return false;
+        for (String preference : prefer) {
+            String token = preference.split("[;=]", 2)[0].trim();
+            if (token.equalsIgnoreCase("respond-async")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates If-None-Match / If-Modified-Since and sets ETag and Last-Modified on the response.
+     */
+    private static boolean notModified(WebRequest request, HistoryVersion version) {
+        return request.checkNotModified(version.etag(), version.lastModifiedMillis());
+    }
+
+    /**
+     * Approximate percentile: share of users with fewer steps than the caller on a date (default: today)
+     */
+    @GetMapping("/percentile")
+    public ResponseEntity<PercentileDto> percentile(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+    ) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return ResponseEntity.ok(stepService.percentile(username, date));
+    }
+
+    /**
+     * Global leaderboard: top N users of a date (default: today in the caller's timezone).
+     * Pass the X-Next-Cursor header of a response as {@code cursor} to get the next N.
+     */
+    @GetMapping("/leaderboard/global")
+    public ResponseEntity<List<RankedEntryDto>> globalLeaderboard(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "10") int top,
+            @RequestParam(required = false) String cursor
+    ) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return page(stepService.globalLeaderboard(username, date, top, cursor));
+    }
+
+    /**
+     * The caller's rank on the global leaderboard
+     */
+    @GetMapping("/leaderboard/global/me")
+    public ResponseEntity<GlobalRankDto> globalRank(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
     ) {
         String username = SecurityUtils.getCurrentUsernameOrNull();
-        return ResponseEntity.ok(stepService.getHistory(username, days));
+        return ResponseEntity.ok(stepService.globalRank(username, date));
     }
 
     /**
-     * Leaderboard among friends for a given date
+     * Leaderboard among friends for a given date, or summed over from..to (inclusive)
      */
     @GetMapping("/leaderboard/friends")
     public ResponseEntity<List<LeaderboardEntryDto>> friendsLeaderboard(
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
-            @RequestParam(defaultValue = "10") int top
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int top,
+            @RequestParam(required = false) String cursor
     ) {
         String username = SecurityUtils.getCurrentUsernameOrNull();
-        return ResponseEntity.ok(stepService.friendsLeaderboard(username, date, top));
+        return page(stepService.friendsLeaderboard(username, date, from, to, top, cursor));
     }
 
     /**
-     * Leaderboard for a group
+     * Leaderboard for a group, for a date or summed over from..to (inclusive)
      */
     @GetMapping("/leaderboard/groups/{groupId}")
     public ResponseEntity<List<LeaderboardEntryDto>> groupLeaderboard(
             @PathVariable Long groupId,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int top,
+            @RequestParam(required = false) String cursor
+    ) {
+        return page(stepService.groupLeaderboard(groupId, date, from, to, top, cursor));
+    }
+
+    /**
+     * Live friends leaderboard of a date (default: today): a server-sent "leaderboard" event with the top N
+     * on subscription and whenever it changes
+     */
+    @GetMapping(value = "/leaderboard/friends/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter friendsLeaderboardStream(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
             @RequestParam(defaultValue = "10") int top
     ) {
-        return ResponseEntity.ok(stepService.groupLeaderboard(groupId, date, top));
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return leaderboardStreams.subscribeFriends(username, date, top);
+    }
+
+    /**
+     * Live group leaderboard of a date (default: today), same events as the friends stream
+     */
+    @GetMapping(value = "/leaderboard/groups/{groupId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter groupLeaderboardStream(
+            @PathVariable Long groupId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "10") int top
+    ) {
+        String username = SecurityUtils.getCurrentUsernameOrNull();
+        return leaderboardStreams.subscribeGroup(username, groupId, date, top);
+    }
+
+    private static <T> ResponseEntity<List<T>> page(LeaderboardPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        return response.body(page.entries());
     }
 }
@@ -0,0 +1,20 @@
+package com.stepapp.steps;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Change in counted steps attributed to a sample's start time; the unit every rollup is built from.
+ */
+record StepDelta(OffsetDateTime startedAt, long steps) {
+
+    /**
+     * Raw deltas: every sample counts in full.
+     */
+    static List<StepDelta> of(List<StepSample> samples) {
+        List<StepDelta> out = new ArrayList<>(samples.size());
+        for (var s : samples) out.add(new StepDelta(s.getStartedAt(), s.getSteps()));
+        return out;
+    }
+}
@@ -0,0 +1,260 @@
+package com.stepapp.steps;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stepapp.steps.dto.IngestJobDto;
+import com.stepapp.steps.dto.UploadStepsRequest;
+import com.stepapp.steps.dto.UploadStepsResponse;
+import com.stepapp.user.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous ingest pipeline: uploads are validated on the request thread, queued here,
+ * and written by a small pool of background writers. Each writer drains up to batch-size
+ * jobs (from any users) and writes them in a single transaction.
+ * <p>
+ * The queue itself is in memory, but job status is stored in ingest_jobs, so any node answers status requests:
+ * a job is inserted as QUEUED before it is queued and marked DONE in the transaction that writes its samples.
+ * Queued jobs are drained on shutdown; those of a node that crashed are never written and are reported as
+ * FAILED once queued for longer than {@code job-lost-after}. Status rows are kept for {@code job-retention}.
+ */
+@Component
+@Slf4j
+public class StepIngestQueue {
+
+    private static final Duration IDLE_POLL = Duration.ofMillis(500);
+
+    private final StepService stepService;
+    private final UserService userService;
+    private final IngestJobRecordRepository jobRepo;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate tx;
+    private final BlockingQueue<IngestJob> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final int writerThreads;
+    private final Duration jobRetention;
+    private final Duration jobLostAfter;
+
+    private final Counter jobsDone;
+    private final Counter jobsFailed;
+    private final Counter jobsRejected;
+    private final DistributionSummary batchSizes;
+
+    private volatile boolean running;
+    private ExecutorService writers;
+
+    public StepIngestQueue(
+            StepService stepService,
+            UserService userService,
+            IngestJobRecordRepository jobRepo,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${steps.ingest.queue-capacity:10000}") int queueCapacity,
+            @Value("${steps.ingest.batch-size:64}") int batchSize,
+            @Value("${steps.ingest.writer-threads:4}") int writerThreads,
+            @Value("${steps.ingest.job-retention:PT1H}") Duration jobRetention,
+            @Value("${steps.ingest.job-lost-after:PT15M}") Duration jobLostAfter
+    ) {
+        this.stepService = stepService;
+        this.userService = userService;
+        this.jobRepo = jobRepo;
+        this.objectMapper = objectMapper;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.batchSize = Math.max(1, batchSize);
+        this.writerThreads = Math.max(1, writerThreads);
+        this.jobRetention = jobRetention;
+        this.jobLostAfter = jobLostAfter;
+
+        Gauge.builder("steps.ingest.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("steps.ingest.queue.capacity", () -> this.queueCapacity).register(meterRegistry);
+        Gauge.builder("steps.ingest.writer.threads", () -> this.writerThreads).register(meterRegistry);
+        Gauge.builder("steps.ingest.batch.max", () -> this.batchSize).register(meterRegistry);
+        this.jobsDone = Counter.builder("steps.ingest.jobs").tag("outcome", "done").register(meterRegistry);
+        this.jobsFailed = Counter.builder("steps.ingest.jobs").tag("outcome", "failed").register(meterRegistry);
+        this.jobsRejected = Counter.builder("steps.ingest.jobs").tag("outcome", "rejected").register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("steps.ingest.batch.size").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        AtomicInteger threadSeq = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread t = new Thread(r, "step-ingest-writer-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < writerThreads; i++) {
+            writers.submit(this::drainLoop);
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // Writers keep draining until the queue is empty, so accepted jobs are not lost on shutdown
+        running = false;
+        writers.shutdown();
+        if (!writers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Ingest writers did not finish in time, {} jobs left in queue", queue.size());
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Validates the upload on the caller's thread and queues it for a background writer.
+     */
+    public IngestJobDto enqueue(String username, UploadStepsRequest req) {
+        IngestJob job = submit(stepService.prepare(username, req));
+        return new IngestJobDto(job.getId().toString(), IngestJob.Status.QUEUED.name(), null, null);
+    }
+
+    /**
+     * Current state of a job owned by the given user, queued on any node.
+     */
+    public IngestJobDto getJob(String username, UUID jobId) {
+        Long userId = userService.getByUsernameOrThrow(username).getId();
+        return jobRepo.findByIdAndUserId(jobId, userId)
+                .map(this::toDto)
+                .orElseThrow(() -> new NoSuchElementException("Ingest job not found"));
+    }
+
+    /**
+     * Queues a prepared upload. Throws IngestQueueFullException when the queue is at capacity.
+     */
+    IngestJob submit(PreparedUpload upload) {
+        if (queue.remainingCapacity() == 0) throw rejected();
+        IngestJob job = new IngestJob(upload);
+        // Stored before queueing, so the writer always finds the row it marks done
+        jobRepo.save(IngestJobRecord.builder()
+                .id(job.getId())
+                .userId(job.getUserId())
+                .status(IngestJob.Status.QUEUED)
+                .queuedAt(job.getQueuedAt())
+                .build());
+        if (!queue.offer(job)) {
+            jobRepo.deleteById(job.getId());
+            throw rejected();
+        }
+        return job;
+    }
+
+    private IngestQueueFullException rejected() {
+        jobsRejected.increment();
+        return new IngestQueueFullException("Ingest queue is full, retry later");
+    }
+
+    private IngestJobDto toDto(IngestJobRecord r) {
+        if (r.getStatus() == IngestJob.Status.QUEUED && r.getQueuedAt().isBefore(OffsetDateTime.now().minus(jobLostAfter))) {
+            // The node holding it stopped before writing it
+            return new IngestJobDto(r.getId().toString(), IngestJob.Status.FAILED.name(), null, "Ingest job was lost");
+        }
+        UploadStepsResponse result = r.getResult() == null ? null : fromJson(r.getResult());
+        return new IngestJobDto(r.getId().toString(), r.getStatus().name(), result, r.getError());
+    }
+
+    @Scheduled(fixedDelayString = "${steps.ingest.purge-interval:PT10M}")
+    void purgeFinished() {
+        int removed = jobRepo.deleteFinishedBefore(OffsetDateTime.now().minus(jobRetention));
+        if (removed > 0) log.debug("Purged {} ingest job records", removed);
+    }
+
+    private void drainLoop() {
+        List<IngestJob> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                IngestJob first = queue.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                // Same user order in every batch keeps per-user locks from deadlocking across writers
+                batch.sort(Comparator.comparing(IngestJob::getUserId));
+                batchSizes.record(batch.size());
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ingest writer loop failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<IngestJob> batch) {
+        try {
+            // One commit for the whole batch, job statuses included
+            tx.executeWithoutResult(status -> {
+                for (IngestJob job : batch) write(job);
+            });
+            jobsDone.increment(batch.size());
+        } catch (RuntimeException batchError) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), batchError);
+                return;
+            }
+            // Isolate the poisoned job(s): retry one transaction per job
+            log.warn("Ingest batch of {} failed, retrying jobs individually", batch.size(), batchError);
+            for (IngestJob job : batch) {
+                try {
+                    tx.executeWithoutResult(status -> write(job));
+                    jobsDone.increment();
+                } catch (RuntimeException e) {
+                    fail(job, e);
+                }
+            }
+        }
+    }
+
+    private void write(IngestJob job) {
+        UploadStepsResponse result = stepService.write(job.getUpload());
+        jobRepo.complete(job.getId(), toJson(result), OffsetDateTime.now());
+    }
+
+    private void fail(IngestJob job, RuntimeException e) {
+        log.error("Ingest job {} for user={} failed", job.getId(), job.getUserId(), e);
+        try {
+            jobRepo.fail(job.getId(), "Ingest failed", OffsetDateTime.now());
+        } catch (RuntimeException statusError) {
+            log.warn("Could not record failure of ingest job {}", job.getId(), statusError);
+        }
+        jobsFailed.increment();
+    }
+
+    private String toJson(UploadStepsResponse result) {
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize ingest result", e);
+        }
+    }
+
+    private UploadStepsResponse fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, UploadStepsResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot deserialize ingest result", e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.stepapp.steps;
+
+import java.util.Locale;
+
+/**
+ * Bucket size for history reads.
+ */
+public enum StepResolution {
+    DAY, WEEK, MONTH;
+
+    public static StepResolution parse(String value) {
+        if (value == null || value.isBlank()) return DAY;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown resolution: " + value);
+        }
+    }
+
+    PeriodSteps.Period period() {
+        return switch (this) {
+            case DAY -> null;
+            case WEEK -> PeriodSteps.Period.WEEK;
+            case MONTH -> PeriodSteps.Period.MONTH;
+        };
+    }
+}
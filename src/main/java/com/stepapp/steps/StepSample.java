@@ -8,7 +8,10 @@ import java.time.OffsetDateTime;
 
 @Entity
 @Table(name = "step_samples", uniqueConstraints = {
-        @UniqueConstraint(columnNames = {"user_id", "provider", "external_id"})
+        // Partitioned by month on started_at (see schema.sql), so the dedup key has to include it
+        @UniqueConstraint(name = "uk_step_samples_dedup", columnNames = {"user_id", "provider", "external_id", "started_at"})
+}, indexes = {
+        @Index(name = "idx_step_samples_user_started", columnList = "user_id, started_at")
 })
 @Getter
 @Setter
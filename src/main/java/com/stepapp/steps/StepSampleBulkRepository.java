@@ -0,0 +1,64 @@
+package com.stepapp.steps;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Set-based write path for step samples, bypassing per-entity persists.
+ */
+public interface StepSampleBulkRepository {
+
+    /**
+     * Inserts all samples with multi-row statements, silently skipping rows that hit
+     * the (user_id, provider, external_id, started_at) unique key.
+     * Returns only the rows that were actually inserted. The key only catches exact re-sends;
+     * callers drop samples whose externalId is already stored with another start first
+     * (see {@link #findExistingExternalIds}).
+     */
+    List<StepSample> insertIgnoringDuplicates(List<StepSample> samples);
+
+    /**
+     * Lightweight projection of a stored sample used by overlap reconciliation.
+     */
+    record SampleInterval(long id, StepSample.Provider provider, OffsetDateTime startedAt, OffsetDateTime endedAt, int steps) {}
+
+    /**
+     * All samples of the user whose interval intersects [from, to], ordered by start.
+     * Only samples starting at most {@link StepService#MAX_SAMPLE_DURATION} before {@code from} are considered,
+     * which keeps the scan on the (user_id, started_at) index.
+     */
+    List<SampleInterval> findIntervals(Long userId, OffsetDateTime from, OffsetDateTime to);
+
+    /**
+     * Streams every sample of the user that started at or after {@code since}, ordered by start.
+     * Rows are fetched from the server {@code fetchSize} at a time, so memory does not grow with history length.
+     * Requires an open transaction (the PostgreSQL driver only uses a cursor outside autocommit).
+     */
+    void forEachIntervalSince(Long userId, OffsetDateTime since, int fetchSize, Consumer<SampleInterval> action);
+
+    /**
+     * Start of the user's oldest stored sample, if any.
+     */
+    Optional<OffsetDateTime> findFirstStartedAt(Long userId);
+
+    /**
+     * Which externalIds of the candidates are already stored for the user and provider, whatever their start,
+     * in one indexed query. Stored samples are looked up within {@link StepService#MAX_SAMPLE_DURATION} of the
+     * candidates' starts, which bounds the scan to the partitions around them.
+     */
+    Set<String> findExistingExternalIds(Long userId, StepSample.Provider provider, Collection<StepSample> candidates);
+
+    /**
+     * Streams externalIds of the user's samples for a provider that started at or after {@code since}.
+     */
+    void forEachExternalIdSince(Long userId, StepSample.Provider provider, OffsetDateTime since, Consumer<String> action);
+
+    /**
+     * Serializes sample writes of one user until the current transaction ends (pg_advisory_xact_lock).
+     */
+    void lockUser(Long userId);
+}
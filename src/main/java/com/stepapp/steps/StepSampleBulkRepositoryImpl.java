@@ -0,0 +1,169 @@
+package com.stepapp.steps;
+
+import com.stepapp.user.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+class StepSampleBulkRepositoryImpl implements StepSampleBulkRepository {
+
+    // 8 bind params per row: a full chunk binds 8000, well below the 32767 parameter limit of the PG protocol
+    static final int CHUNK_SIZE = 1000;
+
+    private static final String INSERT_PREFIX = """
+            INSERT INTO step_samples (user_id, provider, external_id, started_at, ended_at, steps, source, received_at)
+            VALUES\s""";
+
+    private static final String INSERT_SUFFIX = """
+             ON CONFLICT (user_id, provider, external_id, started_at) DO NOTHING
+            RETURNING id, user_id, provider, external_id, started_at, ended_at, steps, source, received_at""";
+
+    private static final String FIND_INTERVALS = """
+            SELECT id, provider, started_at, ended_at, steps
+            FROM step_samples
+            WHERE user_id = ? AND started_at >= ? AND started_at <= ? AND ended_at >= ?
+            ORDER BY started_at""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<SampleInterval> findIntervals(Long userId, OffsetDateTime from, OffsetDateTime to) {
+        return jdbcTemplate.query(FIND_INTERVALS, (rs, rowNum) -> mapInterval(rs),
+                userId, from.minus(StepService.MAX_SAMPLE_DURATION), to, from);
+    }
+
+    @Override
+    public void forEachIntervalSince(Long userId, OffsetDateTime since, int fetchSize, Consumer<SampleInterval> action) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT id, provider, started_at, ended_at, steps
+                    FROM step_samples
+                    WHERE user_id = ? AND started_at >= ?
+                    ORDER BY started_at""");
+            ps.setLong(1, userId);
+            ps.setObject(2, since);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(mapInterval(rs)));
+    }
+
+    @Override
+    public Optional<OffsetDateTime> findFirstStartedAt(Long userId) {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(
+                "SELECT MIN(started_at) FROM step_samples WHERE user_id = ?", OffsetDateTime.class, userId));
+    }
+
+    @Override
+    public Set<String> findExistingExternalIds(Long userId, StepSample.Provider provider, Collection<StepSample> candidates) {
+        List<String> ids = new ArrayList<>(candidates.size());
+        OffsetDateTime from = null, to = null;
+        for (var c : candidates) {
+            if (c.getExternalId() == null) continue;
+            ids.add(c.getExternalId());
+            if (from == null || c.getStartedAt().isBefore(from)) from = c.getStartedAt();
+            if (to == null || c.getStartedAt().isAfter(to)) to = c.getStartedAt();
+        }
+        if (ids.isEmpty()) return Set.of();
+
+        // The started_at bounds let the planner prune to the partitions around the candidates
+        OffsetDateTime lo = from.minus(StepService.MAX_SAMPLE_DURATION), hi = to.plus(StepService.MAX_SAMPLE_DURATION);
+        Set<String> existing = new HashSet<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT DISTINCT external_id FROM step_samples
+                    WHERE user_id = ? AND provider = ? AND started_at BETWEEN ? AND ? AND external_id = ANY(?)""");
+            ps.setLong(1, userId);
+            ps.setString(2, provider.name());
+            ps.setObject(3, lo);
+            ps.setObject(4, hi);
+            ps.setArray(5, con.createArrayOf("text", ids.toArray()));
+            return ps;
+        }, (RowCallbackHandler) rs -> existing.add(rs.getString(1)));
+        return existing;
+    }
+
+    @Override
+    public void forEachExternalIdSince(Long userId, StepSample.Provider provider, OffsetDateTime since, Consumer<String> action) {
+        jdbcTemplate.query("""
+                        SELECT external_id FROM step_samples
+                        WHERE user_id = ? AND provider = ? AND started_at >= ? AND external_id IS NOT NULL""",
+                (RowCallbackHandler) rs -> action.accept(rs.getString(1)),
+                userId, provider.name(), since);
+    }
+
+    @Override
+    public void lockUser(Long userId) {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> null, userId);
+    }
+
+    @Override
+    public List<StepSample> insertIgnoringDuplicates(List<StepSample> samples) {
+        List<StepSample> inserted = new ArrayList<>(samples.size());
+        OffsetDateTime now = OffsetDateTime.now();
+        for (int from = 0; from < samples.size(); from += CHUNK_SIZE) {
+            List<StepSample> chunk = samples.subList(from, Math.min(samples.size(), from + CHUNK_SIZE));
+            inserted.addAll(insertChunk(chunk, now));
+        }
+        return inserted;
+    }
+
+    private List<StepSample> insertChunk(List<StepSample> chunk, OffsetDateTime receivedAt) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + chunk.size() * 24 + INSERT_SUFFIX.length());
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append("(?,?,?,?,?,?,?,?)");
+        }
+        sql.append(INSERT_SUFFIX);
+
+        Map<Long, User> usersById = new HashMap<>();
+        for (StepSample s : chunk) usersById.putIfAbsent(s.getUser().getId(), s.getUser());
+
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString());
+            int p = 1;
+            for (StepSample s : chunk) {
+                ps.setLong(p++, s.getUser().getId());
+                ps.setString(p++, s.getProvider().name());
+                ps.setString(p++, s.getExternalId());
+                ps.setObject(p++, s.getStartedAt());
+                ps.setObject(p++, s.getEndedAt());
+                ps.setInt(p++, s.getSteps());
+                ps.setString(p++, s.getSource());
+                ps.setObject(p++, s.getReceivedAt() != null ? s.getReceivedAt() : receivedAt);
+            }
+            return ps;
+        }, (rs, rowNum) -> mapInserted(rs, usersById));
+    }
+
+    private static SampleInterval mapInterval(ResultSet rs) throws SQLException {
+        return new SampleInterval(
+                rs.getLong("id"),
+                StepSample.Provider.valueOf(rs.getString("provider")),
+                rs.getObject("started_at", OffsetDateTime.class),
+                rs.getObject("ended_at", OffsetDateTime.class),
+                rs.getInt("steps"));
+    }
+
+    private static StepSample mapInserted(ResultSet rs, Map<Long, User> usersById) throws SQLException {
+        return StepSample.builder()
+                .id(rs.getLong("id"))
+                .user(usersById.get(rs.getLong("user_id")))
+                .provider(StepSample.Provider.valueOf(rs.getString("provider")))
+                .externalId(rs.getString("external_id"))
+                .startedAt(rs.getObject("started_at", OffsetDateTime.class))
+                .endedAt(rs.getObject("ended_at", OffsetDateTime.class))
+                .steps(rs.getInt("steps"))
+                .source(rs.getString("source"))
+                .receivedAt(rs.getObject("received_at", OffsetDateTime.class))
+                .build();
+    }
+}
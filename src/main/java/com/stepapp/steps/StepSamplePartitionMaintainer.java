@@ -0,0 +1,159 @@
+package com.stepapp.steps;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the monthly partitions of step_samples (see schema.sql) in shape:
+ * <ul>
+ *   <li>moves rows that landed in the default partition (e.g. old backfills) into their own monthly partition;</li>
+ *   <li>creates partitions for the current month and {@code months-ahead} future months;</li>
+ *   <li>detaches or drops partitions older than {@code retention-months}. Daily, hourly and period rollups
+ *       are written in the same transaction as the samples, so retiring raw samples never loses totals;
+ *       only re-reconciliation and re-bucketing of those months becomes impossible. Retired samples can no
+ *       longer catch re-sent duplicates either, so uploads reject samples older than {@link #retainedFrom}.</li>
+ * </ul>
+ * Partition bounds are UTC month boundaries. Only one node runs maintenance at a time (advisory lock).
+ */
+@Component
+@Slf4j
+class StepSamplePartitionMaintainer {
+
+    private static final long ADVISORY_LOCK_KEY = 0x5374_6570_5061_7274L; // "StepPart"
+    private static final String PARTITION_PREFIX = "step_samples_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM", Locale.ROOT);
+
+    enum RetentionAction { DETACH, DROP }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final RetentionAction retentionAction;
+
+    StepSamplePartitionMaintainer(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${steps.partitions.months-ahead:3}") int monthsAhead,
+            @Value("${steps.partitions.retention-months:0}") int retentionMonths,
+            @Value("${steps.partitions.retention-action:DETACH}") RetentionAction retentionAction
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.retentionAction = retentionAction;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${steps.partitions.maintenance-cron:0 15 3 * * *}")
+    void maintain() {
+        tx.executeWithoutResult(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY);
+            if (!Boolean.TRUE.equals(locked)) {
+                log.debug("Partition maintenance already running on another node");
+                return;
+            }
+            // Default rows first: creating a partition fails while the default partition holds rows of its month
+            adoptDefaultPartitionRows();
+            YearMonth current = YearMonth.now(ZoneOffset.UTC);
+            for (int i = 0; i <= monthsAhead; i++) {
+                ensurePartition(current.plusMonths(i));
+            }
+            if (retentionMonths > 0) {
+                retireBefore(YearMonth.from(retainedFrom(retentionMonths)));
+            }
+        });
+    }
+
+    private void ensurePartition(YearMonth month) {
+        String name = partitionName(month);
+        if (exists(name)) return;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.%s PARTITION OF public.step_samples FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(name, lowerBound(month), lowerBound(month.plusMonths(1))));
+        log.info("Created partition {}", name);
+    }
+
+    /**
+     * Rows outside every monthly partition land in step_samples_default. Each month found there gets its own
+     * partition: the rows are moved into a fresh table, which is then attached (all in one transaction).
+     */
+    private void adoptDefaultPartitionRows() {
+        List<LocalDate> months = jdbcTemplate.queryForList("""
+                SELECT DISTINCT date_trunc('month', started_at AT TIME ZONE 'UTC')::date
+                FROM public.step_samples_default""", LocalDate.class);
+        for (LocalDate m : months) {
+            YearMonth month = YearMonth.from(m);
+            String name = partitionName(month);
+            if (exists(name)) continue; // cannot happen for attached ranges; guards against a detached leftover
+            jdbcTemplate.execute("CREATE TABLE public.%s (LIKE public.step_samples INCLUDING DEFAULTS INCLUDING CONSTRAINTS)".formatted(name));
+            int moved = jdbcTemplate.update("""
+                    WITH moved AS (
+                        DELETE FROM public.step_samples_default
+                        WHERE started_at >= ?::timestamptz AND started_at < ?::timestamptz
+                        RETURNING *)
+                    INSERT INTO public.%s SELECT * FROM moved""".formatted(name),
+                    lowerBound(month), lowerBound(month.plusMonths(1)));
+            jdbcTemplate.execute("ALTER TABLE public.step_samples ATTACH PARTITION public.%s FOR VALUES FROM ('%s') TO ('%s')"
+                    .formatted(name, lowerBound(month), lowerBound(month.plusMonths(1))));
+            log.info("Moved {} rows from default partition into new partition {}", moved, name);
+        }
+    }
+
+    private void retireBefore(YearMonth cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'public.step_samples'::regclass AND c.relname LIKE 'step\\_samples\\_p%'""", String.class);
+        for (String name : partitions) {
+            YearMonth month = YearMonth.parse(name.substring(PARTITION_PREFIX.length()), SUFFIX);
+            if (!month.isBefore(cutoff)) continue;
+            if (retentionAction == RetentionAction.DROP) {
+                jdbcTemplate.execute("DROP TABLE public.%s".formatted(name));
+            } else {
+                jdbcTemplate.execute("ALTER TABLE public.step_samples DETACH PARTITION public.%s".formatted(name));
+            }
+            log.info("Retention: {} partition {}", retentionAction, name);
+        }
+    }
+
+    /**
+     * Start of the oldest month kept under {@code retention-months} (UTC), or {@link OffsetDateTime#MIN}
+     * when every partition is kept.
+     */
+    static OffsetDateTime retainedFrom(int retentionMonths) {
+        if (retentionMonths <= 0) return OffsetDateTime.MIN;
+        return YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+
+    private boolean exists(String table) {
+        return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, "public." + table);
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(SUFFIX);
+    }
+
+    private static String lowerBound(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC).toString();
+    }
+}
@@ -5,9 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.time.OffsetDateTime;
 import java.util.List;
-import java.util.Optional;
 
-public interface StepSampleRepository extends JpaRepository<StepSample, Long> {
-    Optional<StepSample> findByUserAndProviderAndExternalId(User user, StepSample.Provider provider, String externalId);
+public interface StepSampleRepository extends JpaRepository<StepSample, Long>, StepSampleBulkRepository {
     List<StepSample> findAllByUserAndStartedAtBetween(User user, OffsetDateTime from, OffsetDateTime to);
 }
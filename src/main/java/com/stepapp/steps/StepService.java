@@ -1,22 +1,25 @@
 package com.stepapp.steps;
 
 import com.stepapp.friend.FriendService;
-import com.stepapp.group.Group;
 import com.stepapp.group.GroupMemberRepository;
 import com.stepapp.group.GroupRepository;
 import com.stepapp.group.GroupService;
+import com.stepapp.steps.DailyStepsBulkRepository.NamedTotal;
 import com.stepapp.steps.dto.*;
 import com.stepapp.user.User;
 import com.stepapp.user.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.*;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @Service
 @RequiredArgsConstructor
@@ -25,9 +28,30 @@ public class StepService {
 
     private final StepSampleRepository sampleRepo;
     private final DailyStepsRepository dailyRepo;
+    private final HourlyStepsRepository hourlyRepo;
+    private final PeriodStepsRepository periodRepo;
     private final UserService userService;
-    private final FriendService friendService; // used for friends leaderboard
     private final GroupRepository groupRepository; // used for group leaderboard
+    private final ProviderOverlapReconciler overlapReconciler;
+    private final ExternalIdFilterCache externalIdFilter;
+    private final DailyTotalsCache dailyCache;
+    private final GlobalDailyLeaderboard globalLeaderboard;
+    private final GroupLeaderboards groupLeaderboards;
+    private final DailyPercentiles percentiles;
+    private final LeaderboardSnapshots snapshots;
+    private final FriendService friendService;
+    private final ApplicationEventPublisher events;
+
+    static final int MAX_GLOBAL_LIMIT = 1000;
+
+    /** Longer samples are rejected; also bounds how far back overlap lookups scan. */
+    static final Duration MAX_SAMPLE_DURATION = Duration.ofDays(1);
+
+    @Value("${steps.reconcile.enabled:true}")
+    private boolean reconcileOverlaps;
+
+    @Value("${steps.partitions.retention-months:0}")
+    private int retentionMonths;
 
     /**
      * Ingests a batch of samples for a user.
@@ -35,163 +59,506 @@ public class StepService {
      */
     @Transactional
     public UploadStepsResponse ingest(String username, UploadStepsRequest req) {
+        return write(prepare(username, req));
+    }
+
+    /**
+     * Validates an upload and turns it into insert-ready samples without touching step tables.
+     * Invalid samples are counted as rejected; request-level problems throw IllegalArgumentException.
+     */
+    PreparedUpload prepare(String username, UploadStepsRequest req) {
         if (req == null || req.samples() == null || req.samples().isEmpty()) {
             throw new IllegalArgumentException("Empty payload");
         }
 
         User user = userService.getByUsernameOrThrow(username);
+        StepSample.Provider provider = parseProvider(req.provider());
 
-        StepSample.Provider provider;
-        try {
-            provider = StepSample.Provider.valueOf(req.provider().toUpperCase(Locale.ROOT));
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Unknown provider: " + req.provider());
+        int rejected = 0;
+        OffsetDateTime minStartedAt = retainedFrom();
+        OffsetDateTime maxEndedAt = OffsetDateTime.now().plusMinutes(5);
+        List<StepSample> candidates = new ArrayList<>(req.samples().size());
+
+        for (var dto : req.samples()) {
+            StepSample s = toSample(user, provider, dto, minStartedAt, maxEndedAt);
+            if (s == null) {
+                rejected++;
+                continue;
+            }
+            candidates.add(s);
         }
 
+        return new PreparedUpload(user, userZone(user), candidates, rejected);
+    }
+
+    /**
+     * Writes a prepared upload: bulk sample insert plus daily aggregate upsert.
+     * Runs in the caller's transaction.
+     */
+    UploadStepsResponse write(PreparedUpload upload) {
         Map<LocalDate, Long> addedPerDay = new HashMap<>();
-        int accepted = 0, skipped = 0;
+        List<StepSample> candidates = upload.samples();
 
-        ZoneId userZone = ZoneId.of(Optional.ofNullable(user.getTimezone()).orElse("UTC"));
+        int accepted = writeSamples(upload.user(), upload.zone(), candidates, addedPerDay);
+        int skipped = upload.rejected() + candidates.size() - accepted;
 
-        for (var dto : req.samples()) {
-            // basic validation
-            if (dto.steps() == null || dto.steps() < 0) {
-                skipped++;
-                continue;
-            }
-            if (dto.startedAt().isAfter(dto.endedAt())) {
-                skipped++;
-                continue;
-            }
-            // Prevent future insane timestamps (allow small skew of 5 minutes)
-            if (dto.endedAt().isAfter(OffsetDateTime.now().plusMinutes(5))) {
-                skipped++;
-                continue;
-            }
+        return toResponse(upload.user(), accepted, skipped, addedPerDay);
+    }
 
-            // Dedup by externalId when provided
-            if (dto.externalId() != null && !dto.externalId().isBlank()) {
-                var exists = sampleRepo.findByUserAndProviderAndExternalId(user, provider, dto.externalId());
-                if (exists.isPresent()) {
-                    // duplicate
-                    skipped++;
-                    continue;
-                }
-            }
+    /**
+     * Inserts samples (dropping duplicates), applies their per-day increments to daily_steps
+     * and merges those increments into {@code addedPerDay}. Returns the number of inserted samples.
+     * Runs in the caller's transaction.
+     */
+    int writeSamples(User user, ZoneId zone, List<StepSample> candidates, Map<LocalDate, Long> addedPerDay) {
+        if (candidates.isEmpty()) return 0;
+
+        // Retried batches: drop samples we already have before taking locks or sending rows
+        candidates = externalIdFilter.dropKnownDuplicates(user.getId(), candidates.get(0).getProvider(), candidates);
+        if (candidates.isEmpty()) return 0;
+
+        // Overlap deltas read neighbouring samples and timezone re-bucketing rewrites all rollups,
+        // so writes of one user must not interleave with either
+        sampleRepo.lockUser(user.getId());
+        // The zone captured when the upload was prepared may predate a timezone change; under the lock,
+        // the committed one is authoritative (a re-bucketing run either already used it or will run after us)
+        zone = userService.findTimezone(user.getId()).map(ZoneId::of).orElse(zone);
+
+        // The unique key must contain the partition key started_at, so it only catches exact re-sends. A sample
+        // re-sent under its externalId with a corrected start is dropped here; under the lock, so two such
+        // uploads can't both pass. The filter above may not know ids written by other nodes, so all are checked.
+        candidates = dropStoredExternalIds(user.getId(), candidates);
+        if (candidates.isEmpty()) return 0;
+
+        // Persist in bulk; exact duplicates racing this upload are dropped by ON CONFLICT DO NOTHING
+        List<StepSample> inserted = sampleRepo.insertIgnoringDuplicates(candidates);
+        externalIdFilter.recordInserted(inserted);
+
+        // Overlapping samples of different providers are counted once, by provider priority
+        List<StepDelta> deltas = reconcileOverlaps
+                ? overlapReconciler.sampleDeltas(user.getId(), inserted)
+                : StepDelta.of(inserted);
+
+        Map<LocalDate, Long> increments = new HashMap<>();
+        Map<LocalDateTime, Long> hourlyIncrements = new HashMap<>();
+        for (var d : deltas) {
+            // Aggregate by local date/hour — use the sample's start time to pick the bucket
+            LocalDateTime local = d.startedAt().atZoneSameInstant(zone).toLocalDateTime();
+            increments.merge(local.toLocalDate(), d.steps(), Long::sum);
+            hourlyIncrements.merge(local.truncatedTo(ChronoUnit.HOURS), d.steps(), Long::sum);
+        }
+
+        // Update rollups atomically in the database (no read-modify-write)
+        Map<LocalDate, Long> totals = dailyRepo.addToTotals(user.getId(), increments);
+        globalLeaderboard.recordTotals(user.getId(), totals);
+        groupLeaderboards.recordTotals(user.getId(), totals);
+        if (!increments.isEmpty()) {
+            events.publishEvent(new DailyTotalsChangedEvent(user.getId(),
+                    Collections.min(increments.keySet()), Collections.max(increments.keySet())));
+        }
+        hourlyRepo.addToTotals(user.getId(), hourlyIncrements);
+        periodRepo.addToTotals(user.getId(), increments);
+        if (!increments.isEmpty()) dailyCache.recordWrite(user.getId(), dailyRepo.bumpVersion(user.getId()), increments);
+        increments.forEach((date, steps) -> addedPerDay.merge(date, steps, Long::sum));
+        return inserted.size();
+    }
 
-            // Persist sample
-            StepSample s = StepSample.builder()
-                    .user(user)
-                    .provider(provider)
-                    .externalId(dto.externalId())
-                    .startedAt(dto.startedAt())
-                    .endedAt(dto.endedAt())
-                    .steps(dto.steps())
-                    .source(dto.source())
-                    .build();
-            sampleRepo.save(s);
-            accepted++;
-
-            // Aggregate by local date — use the sample's start time to pick date
-            Instant instant = dto.startedAt().toInstant();
-            LocalDate localDate = instant.atZone(userZone).toLocalDate();
-            addedPerDay.merge(localDate, dto.steps().longValue(), Long::sum);
-        }
-
-        // Update daily aggregates (atomic per-user transaction)
-        for (var e : addedPerDay.entrySet()) {
-            LocalDate date = e.getKey();
-            long toAdd = e.getValue();
-
-            DailySteps ds = dailyRepo.findByUserAndDate(user, date)
-                    .map(d -> {
-                        d.setStepsTotal(d.getStepsTotal() + toAdd);
-                        return d;
-                    })
-                    .orElseGet(() -> DailySteps.builder()
-                            .user(user)
-                            .date(date)
-                            .stepsTotal(toAdd)
-                            .build());
-
-            dailyRepo.save(ds);
-        }
-
-        // Prepare response
+    /**
+     * Candidates minus those whose externalId is already stored (within MAX_SAMPLE_DURATION of their start) or
+     * repeated earlier in the batch. All candidates share one provider.
+     */
+    private List<StepSample> dropStoredExternalIds(Long userId, List<StepSample> candidates) {
+        Set<String> seen = new HashSet<>(
+                sampleRepo.findExistingExternalIds(userId, candidates.get(0).getProvider(), candidates));
+        List<StepSample> remaining = new ArrayList<>(candidates.size());
+        for (var s : candidates) {
+            if (s.getExternalId() == null || seen.add(s.getExternalId())) remaining.add(s);
+        }
+        return remaining;
+    }
+
+    UploadStepsResponse toResponse(User user, int accepted, int skipped, Map<LocalDate, Long> addedPerDay) {
         Map<String, Long> perDateStr = addedPerDay.entrySet().stream()
                 .collect(Collectors.toMap(e -> e.getKey().toString(), Map.Entry::getValue));
 
-        log.debug("Ingest result for user={} accepted={} skipped={} perDate={}", username, accepted, skipped, perDateStr);
+        log.debug("Ingest result for user={} accepted={} skipped={} perDate={}",
+                user.getUsername(), accepted, skipped, perDateStr);
         return new UploadStepsResponse(accepted, skipped, perDateStr);
     }
 
+    static StepSample.Provider parseProvider(String provider) {
+        if (provider == null) throw new IllegalArgumentException("provider required");
+        try {
+            return StepSample.Provider.valueOf(provider.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown provider: " + provider);
+        }
+    }
+
+    static ZoneId userZone(User user) {
+        return ZoneId.of(Optional.ofNullable(user.getTimezone()).orElse("UTC"));
+    }
+
+    /**
+     * Earliest sample start accepted. Samples of partitions retired by retention are gone, so a re-sent old
+     * sample would find nothing to deduplicate against and be counted a second time.
+     */
+    OffsetDateTime retainedFrom() {
+        return StepSamplePartitionMaintainer.retainedFrom(retentionMonths);
+    }
+
+    /**
+     * Maps a sample DTO to an entity, or returns null when the sample fails validation.
+     */
+    static StepSample toSample(User user, StepSample.Provider provider, StepSampleDto dto,
+                               OffsetDateTime minStartedAt, OffsetDateTime maxEndedAt) {
+        // basic validation
+        if (dto.steps() == null || dto.steps() < 0) return null;
+        if (dto.startedAt() == null || dto.endedAt() == null) return null;
+        if (dto.startedAt().isAfter(dto.endedAt())) return null;
+        if (Duration.between(dto.startedAt(), dto.endedAt()).compareTo(MAX_SAMPLE_DURATION) > 0) return null;
+        // Prevent future insane timestamps (allow small skew of 5 minutes)
+        if (dto.endedAt().isAfter(maxEndedAt)) return null;
+        if (dto.startedAt().isBefore(minStartedAt)) return null;
+
+        // Blank externalId means "no dedup key": store NULL so the unique constraint ignores it
+        String externalId = dto.externalId() == null || dto.externalId().isBlank() ? null : dto.externalId();
+
+        return StepSample.builder()
+                .user(user)
+                .provider(provider)
+                .externalId(externalId)
+                .startedAt(dto.startedAt())
+                .endedAt(dto.endedAt())
+                .steps(dto.steps())
+                .source(dto.source())
+                .build();
+    }
+
     @Transactional(readOnly = true)
     public List<DailyStepsDto> getDaily(String username, LocalDate from, LocalDate to) {
+        return getDaily(username, from, to, StepResolution.DAY);
+    }
+
+    /**
+     * Totals between dates (inclusive) bucketed by day, ISO week or calendar month.
+     * Week/month buckets are read from the period rollup; buckets cut by the range edges are summed
+     * from daily rows so totals cover exactly [from, to]. Each bucket is dated by its first day inside the range.
+     */
+    @Transactional(readOnly = true)
+    public List<DailyStepsDto> getDaily(String username, LocalDate from, LocalDate to, StepResolution resolution) {
         User user = userService.getByUsernameOrThrow(username);
         if (from == null || to == null) {
             throw new IllegalArgumentException("from/to required");
         }
-        var list = dailyRepo.findAllByUserAndDateBetween(user, from, to);
-        return list.stream()
-                .map(d -> new DailyStepsDto(d.getDate(), d.getStepsTotal()))
-                .sorted(Comparator.comparing(DailyStepsDto::date))
-                .collect(Collectors.toList());
+        if (resolution != StepResolution.DAY) {
+            return getPeriods(user, resolution.period(), from, to);
+        }
+        if (from.isAfter(to)) return List.of();
+
+        // Read before the rows: the rows are at least this current, so a window tagged with it never runs ahead
+        long version = dailyRepo.findVersion(user.getId()).version();
+        long[] totals = dailyCache.getRange(user.getId(), version, from, to,
+                (f, t) -> dailyRepo.findTotalsBetween(user.getId(), f, t));
+        List<DailyStepsDto> out = new ArrayList<>();
+        for (int i = 0; i < totals.length; i++) {
+            if (totals[i] != DailyTotalsCache.MISSING) out.add(new DailyStepsDto(from.plusDays(i), totals[i]));
+        }
+        return out;
     }
 
     @Transactional(readOnly = true)
     public List<DailyStepsDto> getHistory(String username, int days) {
+        return getHistory(username, days, StepResolution.DAY);
+    }
+
+    @Transactional(readOnly = true)
+    public List<DailyStepsDto> getHistory(String username, int days, StepResolution resolution) {
         if (days <= 0) throw new IllegalArgumentException("days must be > 0");
         User user = userService.getByUsernameOrThrow(username);
-        LocalDate to = LocalDate.now(ZoneId.of(Optional.ofNullable(user.getTimezone()).orElse("UTC")));
+        LocalDate to = LocalDate.now(userZone(user));
         LocalDate from = to.minusDays(days - 1);
-        return getDaily(username, from, to);
+        return getDaily(username, from, to, resolution);
     }
 
     /**
-     * Leaderboard among friends for a given date.
+     * Validators for {@link #getDaily}, read without loading any totals: the ETag names the user, range,
+     * resolution and version of the user's daily totals, and Last-Modified is the time of that version
+     * (epoch millis, -1 before the first write). Week/month buckets change in the same transactions as daily
+     * rows, so one version serves every resolution.
      */
     @Transactional(readOnly = true)
-    public List<LeaderboardEntryDto> friendsLeaderboard(String username, LocalDate date, int limit) {
+    public HistoryVersion getDailyVersion(String username, LocalDate from, LocalDate to, StepResolution resolution) {
         User user = userService.getByUsernameOrThrow(username);
-        // friendService.listFriends returns List<String> usernames
-        List<String> friendsUsernames = friendService.listFriends(username);
-        // include self too
-        List<String> allUsernames = new ArrayList<>(friendsUsernames);
-        allUsernames.add(user.getUsername());
-
-        // load User entities
-        var users = allUsernames.stream()
-                .map(userService::findByUsername)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from/to required");
+        }
+        return version(user, from, to, resolution);
+    }
 
-        if (users.isEmpty()) return Collections.emptyList();
+    @Transactional(readOnly = true)
+    public HistoryVersion getHistoryVersion(String username, int days, StepResolution resolution) {
+        if (days <= 0) throw new IllegalArgumentException("days must be > 0");
+        User user = userService.getByUsernameOrThrow(username);
+        LocalDate to = LocalDate.now(userZone(user));
+        return version(user, to.minusDays(days - 1), to, resolution);
+    }
 
-        var top = dailyRepo.findTopByDateAndUsers(date, users, PageRequest.of(0, Math.max(1, limit)));
-        return top.stream()
-                .map(d -> new LeaderboardEntryDto(d.getUser().getUsername(), d.getStepsTotal()))
-                .collect(Collectors.toList());
+    private HistoryVersion version(User user, LocalDate from, LocalDate to, StepResolution resolution) {
+        var v = dailyRepo.findVersion(user.getId());
+        String etag = "\"%x-%x-%x-%s-%x\"".formatted(user.getId(), from.toEpochDay(), to.toEpochDay(),
+                resolution.name().toLowerCase(Locale.ROOT), v.version());
+        return new HistoryVersion(etag, v.updatedAt() == null ? -1 : v.updatedAt().toInstant().toEpochMilli());
+    }
+
+    private List<DailyStepsDto> getPeriods(User user, PeriodSteps.Period period, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return List.of();
+
+        LocalDate firstStart = period.startOf(from);
+        LocalDate lastStart = period.startOf(to);
+        Map<LocalDate, Long> buckets = new TreeMap<>();
+        for (var p : periodRepo.findAllByUserAndPeriodAndPeriodStartBetweenOrderByPeriodStart(user, period, firstStart, lastStart)) {
+            buckets.put(p.getPeriodStart(), p.getStepsTotal());
+        }
+
+        // Partial periods at the edges come from daily rows (at most two short range sums)
+        boolean firstPartial = !from.equals(firstStart);
+        boolean lastPartial = !to.equals(period.endOf(to));
+        if (firstStart.equals(lastStart)) {
+            if (firstPartial || lastPartial) buckets.put(firstStart, dailyRepo.sumByUserAndDateBetween(user, from, to));
+        } else {
+            if (firstPartial) buckets.put(firstStart, dailyRepo.sumByUserAndDateBetween(user, from, period.endOf(from)));
+            if (lastPartial) buckets.put(lastStart, dailyRepo.sumByUserAndDateBetween(user, lastStart, to));
+        }
+
+        List<DailyStepsDto> out = new ArrayList<>(buckets.size());
+        buckets.forEach((start, total) -> {
+            if (total != 0) out.add(new DailyStepsDto(start.isBefore(from) ? from : start, total));
+        });
+        return out;
     }
 
     /**
-     * Leaderboard for a group (by groupId) for a given date.
+     * Intraday chart: 24 hourly totals of the user's local day, read from the hourly rollup only.
      */
     @Transactional(readOnly = true)
-    public List<LeaderboardEntryDto> groupLeaderboard(Long groupId, LocalDate date, int limit) {
-        Group group = groupRepository.findById(groupId)
-                .orElseThrow(() -> new NoSuchElementException("Group not found"));
+    public List<HourlyStepsDto> getHourly(String username, LocalDate date) {
+        if (date == null) throw new IllegalArgumentException("date required");
+        User user = userService.getByUsernameOrThrow(username);
 
-        // extract members
-        var members = group.getMembers().stream()
-                .map(m -> m.getUser())
-                .collect(Collectors.toList());
+        long[] perHour = new long[24];
+        for (var h : hourlyRepo.findAllByUserAndDateOrderByHour(user, date)) {
+            perHour[h.getHour()] = h.getStepsTotal();
+        }
+        List<HourlyStepsDto> out = new ArrayList<>(24);
+        for (int hour = 0; hour < 24; hour++) out.add(new HourlyStepsDto(hour, perHour[hour]));
+        return out;
+    }
+
+    /**
+     * Friends leaderboard page for one date, or for a date range when {@code from}/{@code to} are given.
+     * Further pages follow the opaque cursor of the previous page (a keyset on steps and user id), never an offset.
+     * Friend membership is evaluated at read time, also for finalized dates: the board shows the caller's current
+     * friends with their frozen totals of that date, so adding or removing a friend changes past boards too.
+     */
+    @Transactional(readOnly = true)
+    public LeaderboardPage<LeaderboardEntryDto> friendsLeaderboard(String username, LocalDate date, LocalDate from,
+                                                                   LocalDate to, int limit, String cursor) {
+        boolean range = isRange(date, from, to);
+        LeaderboardCursor after = LeaderboardCursor.decode(cursor);
+        User user = userService.getByUsernameOrThrow(username);
+        return range
+                ? friendsPage(user.getId(), null, from, to, after, limit)
+                : friendsPage(user.getId(), date, null, null, after, limit);
+    }
+
+    /**
+     * Friends leaderboard page of a user by id, for a date or (when {@code date} is null) a validated range.
+     * Friends are today's friends whatever the date (see {@link #friendsLeaderboard}).
+     */
+    LeaderboardPage<LeaderboardEntryDto> friendsPage(Long userId, LocalDate date, LocalDate from, LocalDate to,
+                                                     LeaderboardCursor after, int limit) {
+        int n = Math.min(Math.max(1, limit), MAX_GLOBAL_LIMIT);
+        if (date != null && !globalLeaderboard.isActive(date)) {
+            Optional<RankedSnapshot> snapshot = snapshots.global(date);
+            if (snapshot.isPresent()) return entriesPage(named(friendsIn(snapshot.get(), userId, after, n)), after, n);
+        }
+        // Friend resolution, totals and ranking happen in a single statement (self included)
+        List<NamedTotal> rows = date == null
+                ? dailyRepo.findFriendsPageBetween(userId, from, to, after.steps(), after.userId(), n)
+                : dailyRepo.findFriendsPageOn(userId, date, after.steps(), after.userId(), n);
+        return entriesPage(rows, after, n);
+    }
+
+    /**
+     * Group leaderboard page for one date, or for a date range when {@code from}/{@code to} are given.
+     * Range totals come from the running totals in daily_steps, two index probes per member.
+     */
+    @Transactional(readOnly = true)
+    public LeaderboardPage<LeaderboardEntryDto> groupLeaderboard(Long groupId, LocalDate date, LocalDate from,
+                                                                 LocalDate to, int limit, String cursor) {
+        boolean range = isRange(date, from, to);
+        LeaderboardCursor after = LeaderboardCursor.decode(cursor);
+        if (!groupRepository.existsById(groupId)) {
+            throw new NoSuchElementException("Group not found");
+        }
+        return range
+                ? groupPage(groupId, null, from, to, after, limit)
+                : groupPage(groupId, date, null, null, after, limit);
+    }
+
+    /**
+     * Group leaderboard page, for a date or (when {@code date} is null) a validated range.
+     */
+    LeaderboardPage<LeaderboardEntryDto> groupPage(Long groupId, LocalDate date, LocalDate from, LocalDate to,
+                                                   LeaderboardCursor after, int limit) {
+        int n = Math.min(Math.max(1, limit), MAX_GLOBAL_LIMIT);
+        if (date == null) {
+            return entriesPage(dailyRepo.findGroupPageBetween(groupId, from, to, after.steps(), after.userId(), n), after, n);
+        }
+        // Recent dates: slice of the incrementally maintained board, no member entities loaded
+        if (groupLeaderboards.isActive(date)) {
+            return entriesPage(named(groupLeaderboards.board(groupId, date).after(after.steps(), after.userId(), n)), after, n);
+        }
+        Optional<RankedSnapshot> snapshot = snapshots.group(groupId, date);
+        if (snapshot.isPresent()) return entriesPage(named(snapshot.get().after(after.steps(), after.userId(), n)), after, n);
+        return entriesPage(dailyRepo.findGroupPageOn(groupId, date, after.steps(), after.userId(), n), after, n);
+    }
+
+    /**
+     * The user's and their friends' entries of a finalized date, looked up in the global snapshot.
+     */
+    private List<RankedDailyBoard.Entry> friendsIn(RankedSnapshot snapshot, Long userId, LeaderboardCursor after, int limit) {
+        RankedDailyBoard.Entry cursor = new RankedDailyBoard.Entry(after.userId(), after.steps());
+        List<RankedDailyBoard.Entry> entries = new ArrayList<>();
+        LongStream.concat(friendService.friendIds(userId).stream(), LongStream.of(userId)).forEach(id -> {
+            long steps = snapshot.stepsOf(id);
+            if (steps < 0) return;
+            RankedDailyBoard.Entry e = new RankedDailyBoard.Entry(id, steps);
+            if (e.compareTo(cursor) > 0) entries.add(e);
+        });
+        Collections.sort(entries);
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+
+    private static boolean isRange(LocalDate date, LocalDate from, LocalDate to) {
+        if (from == null && to == null) {
+            if (date == null) throw new IllegalArgumentException("date or from/to required");
+            return false;
+        }
+        if (date != null) throw new IllegalArgumentException("Use either date or from/to");
+        if (from == null || to == null) throw new IllegalArgumentException("from/to required");
+        if (from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+        return true;
+    }
+
+    /**
+     * Approximate share of users with fewer steps than the caller on a local date (default: their today).
+     * Answered from a fixed-size histogram, so the cost does not depend on the number of users.
+     */
+    @Transactional(readOnly = true)
+    public PercentileDto percentile(String username, LocalDate requestedDate) {
+        User user = userService.getByUsernameOrThrow(username);
+        LocalDate date = requestedDate != null ? requestedDate : LocalDate.now(userZone(user));
+
+        long steps;
+        if (globalLeaderboard.isActive(date)) {
+            steps = globalLeaderboard.board(date).stepsOf(user.getId());
+        } else {
+            steps = snapshots.global(date).map(s -> s.stepsOf(user.getId()))
+                    .orElseGet(() -> dailyRepo.findByUserAndDate(user, date).map(DailySteps::getStepsTotal).orElse(-1L));
+        }
+        boolean participant = steps >= 0;
+        if (!participant) steps = 0;
+
+        var pos = percentiles.histogram(date).position(steps);
+        // The caller sits in their own bucket; everyone else in it may be above or below, unless the bucket holds
+        // a single value and they all tie with the caller
+        long self = participant ? 1 : 0;
+        long others = pos.total() - self;
+        long unsure = pos.exact() ? 0 : Math.max(0, pos.sameBucket() - self);
+        if (others <= 0) return new PercentileDto(date, steps, pos.total(), 0, 0);
+        double percentBelow = 100.0 * (pos.below() + unsure / 2.0) / others;
+        double margin = 100.0 * (unsure / 2.0) / others;
+        return new PercentileDto(date, steps, pos.total(), percentBelow, margin);
+    }
+
+    /**
+     * Global leaderboard page for a local date (default: the caller's today). Recent dates are served from the
+     * in-memory ranked board, finalized ones from their snapshot, anything else from the
+     * (date, steps_total DESC, user_id) index. Ranks continue from the cursor, so no page counts the users
+     * ahead of it.
+     */
+    @Transactional(readOnly = true)
+    public LeaderboardPage<RankedEntryDto> globalLeaderboard(String username, LocalDate date, int limit, String cursor) {
+        LeaderboardCursor after = LeaderboardCursor.decode(cursor);
+        if (date == null) date = LocalDate.now(userZone(userService.getByUsernameOrThrow(username)));
+        int n = Math.min(Math.max(1, limit), MAX_GLOBAL_LIMIT);
+
+        List<NamedTotal> rows;
+        if (globalLeaderboard.isActive(date)) {
+            rows = named(globalLeaderboard.board(date).after(after.steps(), after.userId(), n));
+        } else {
+            LocalDate day = date;
+            rows = snapshots.global(date)
+                    .map(s -> named(s.after(after.steps(), after.userId(), n)))
+                    .orElseGet(() -> dailyRepo.findPageOn(day, after.steps(), after.userId(), n));
+        }
 
-        if (members.isEmpty()) return Collections.emptyList();
+        List<RankedEntryDto> out = new ArrayList<>(rows.size());
+        LeaderboardCursor last = after;
+        for (NamedTotal t : rows) {
+            last = last.next(t.userId(), t.stepsTotal());
+            out.add(new RankedEntryDto(last.rank(), t.username(), t.stepsTotal()));
+        }
+        return new LeaderboardPage<>(out, rows.size() == n ? last.encode() : null);
+    }
+
+    private static LeaderboardPage<LeaderboardEntryDto> entriesPage(List<NamedTotal> rows, LeaderboardCursor after, int limit) {
+        List<LeaderboardEntryDto> out = new ArrayList<>(rows.size());
+        LeaderboardCursor last = after;
+        for (NamedTotal t : rows) {
+            last = last.next(t.userId(), t.stepsTotal());
+            out.add(new LeaderboardEntryDto(t.username(), t.stepsTotal()));
+        }
+        // A short page is the last one
+        return new LeaderboardPage<>(out, rows.size() == limit ? last.encode() : null);
+    }
 
-        var top = dailyRepo.findTopByDateAndUsers(date, members, PageRequest.of(0, Math.max(1, limit)));
-        return top.stream()
-                .map(d -> new LeaderboardEntryDto(d.getUser().getUsername(), d.getStepsTotal()))
+    private List<NamedTotal> named(List<RankedDailyBoard.Entry> entries) {
+        Map<Long, String> names = userService.usernamesById(entries.stream().map(RankedDailyBoard.Entry::userId).toList());
+        return entries.stream()
+                .map(e -> new NamedTotal(e.userId(), names.get(e.userId()), e.steps()))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * The caller's competition rank on the global leaderboard of a local date (default: their today).
+     */
+    @Transactional(readOnly = true)
+    public GlobalRankDto globalRank(String username, LocalDate requestedDate) {
+        User user = userService.getByUsernameOrThrow(username);
+        LocalDate date = requestedDate != null ? requestedDate : LocalDate.now(userZone(user));
+
+        if (globalLeaderboard.isActive(date)) {
+            RankedDailyBoard board = globalLeaderboard.board(date);
+            long rank = board.rankOf(user.getId());
+            return rank < 0
+                    ? new GlobalRankDto(date, null, 0, board.size())
+                    : new GlobalRankDto(date, rank, board.stepsOf(user.getId()), board.size());
+        }
+        Optional<RankedSnapshot> snapshot = snapshots.global(date);
+        if (snapshot.isPresent()) {
+            RankedSnapshot s = snapshot.get();
+            long rank = s.rankOf(user.getId());
+            return rank < 0
+                    ? new GlobalRankDto(date, null, 0, s.size())
+                    : new GlobalRankDto(date, rank, s.stepsOf(user.getId()), s.size());
+        }
+        long participants = dailyRepo.countByDate(date);
+        return dailyRepo.findByUserAndDate(user, date)
+                .map(d -> new GlobalRankDto(date, dailyRepo.countByDateAndStepsTotalGreaterThan(date, d.getStepsTotal()) + 1,
+                        d.getStepsTotal(), participants))
+                .orElseGet(() -> new GlobalRankDto(date, null, 0, participants));
+    }
 }
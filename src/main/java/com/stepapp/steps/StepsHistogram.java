@@ -0,0 +1,59 @@
+package com.stepapp.steps;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR-style log-linear histogram of daily totals: exact buckets below 128 steps, then 128 buckets per
+ * power of two, so every bucket spans at most 1/128 (< 0.8%) of its values. Totals above 2^25 share the
+ * last bucket. Memory is fixed (~19 KB) regardless of the number of users.
+ * <p>
+ * Values can be added and removed (a user's total moves between buckets as they upload) and updates are
+ * lock-free.
+ */
+final class StepsHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 24;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * Share of users below a value: exact part plus the users sharing its bucket, whose order is unknown unless
+     * the bucket is {@code exact} (one value, so they all tie with it).
+     */
+    record Position(long below, long sameBucket, boolean exact, long total) {}
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void add(long steps) {
+        counts.getAndIncrement(bucket(steps));
+    }
+
+    void remove(long steps) {
+        counts.getAndDecrement(bucket(steps));
+    }
+
+    /**
+     * Where a total falls: one pass over the fixed bucket array, independent of the number of users.
+     */
+    Position position(long steps) {
+        int target = bucket(steps);
+        long below = 0, same = 0, total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (i < target) below += c;
+            else if (i == target) same = c;
+            total += c;
+        }
+        return new Position(below, same, target < SUB_BUCKETS, total);
+    }
+
+    static int bucket(long steps) {
+        long v = Math.max(0, Math.min(steps, MAX_VALUE));
+        if (v < SUB_BUCKETS) return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+}
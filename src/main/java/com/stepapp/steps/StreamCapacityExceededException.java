@@ -0,0 +1,10 @@
+package com.stepapp.steps;
+
+/**
+ * Thrown when a node already holds its maximum number of leaderboard streams; clients should retry later.
+ */
+public class StreamCapacityExceededException extends RuntimeException {
+    public StreamCapacityExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,96 @@
+package com.stepapp.steps;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsResponse;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming uploads: newline-delimited JSON (application/x-ndjson) and the compact binary format
+ * ({@link CompactSampleCodec}). Samples are decoded one at a time and written in chunks, so heap use
+ * does not grow with payload size.
+ * Each chunk commits on its own: if the stream breaks midway, already written chunks stay and a
+ * retry of the same payload is deduplicated by externalId.
+ */
+@Service
+public class StreamingUploadService {
+
+    private final StepService stepService;
+    private final UserService userService;
+    private final TransactionTemplate tx;
+    private final ObjectReader sampleReader;
+    private final int chunkSize;
+
+    public StreamingUploadService(
+            StepService stepService,
+            UserService userService,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            @Value("${steps.ingest.stream-chunk-size:1000}") int chunkSize
+    ) {
+        this.stepService = stepService;
+        this.userService = userService;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.sampleReader = objectMapper.readerFor(StepSampleDto.class);
+        this.chunkSize = chunkSize;
+    }
+
+    public UploadStepsResponse ingestNdjson(String username, String provider, InputStream body) throws IOException {
+        User user = userService.getByUsernameOrThrow(username);
+        var writer = new ChunkedSampleWriter(stepService, tx, user, StepService.parseProvider(provider), chunkSize);
+
+        try (MappingIterator<StepSampleDto> it = sampleReader.readValues(body)) {
+            while (it.hasNextValue()) {
+                writer.add(it.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed NDJSON after " + writer.received() + " samples: "
+                    + e.getOriginalMessage());
+        }
+
+        return finish(writer);
+    }
+
+    /**
+     * Decodes the compact binary format straight into the chunked writer; the provider comes from the payload header.
+     */
+    public UploadStepsResponse ingestCompact(String username, InputStream body) throws IOException {
+        User user = userService.getByUsernameOrThrow(username);
+        CompactSampleCodec.Decoder decoder;
+        try {
+            decoder = new CompactSampleCodec.Decoder(body);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Truncated compact payload header");
+        }
+        var writer = new ChunkedSampleWriter(stepService, tx, user, StepService.parseProvider(decoder.provider()), chunkSize);
+
+        try {
+            for (StepSampleDto dto = decoder.next(); dto != null; dto = decoder.next()) {
+                writer.add(dto);
+            }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Truncated compact payload after " + writer.received() + " samples");
+        }
+
+        return finish(writer);
+    }
+
+    private static UploadStepsResponse finish(ChunkedSampleWriter writer) {
+        if (writer.received() == 0) {
+            throw new IllegalArgumentException("Empty payload");
+        }
+        return writer.finish();
+    }
+}
@@ -0,0 +1,217 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.StepSampleBulkRepository.SampleInterval;
+import com.stepapp.user.UserService;
+import com.stepapp.user.UserTimezoneChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilds a user's daily, hourly and weekly/monthly rollups from step_samples after their timezone changed,
+ * since every sample was bucketed into local dates under the old zone at ingest time.
+ * <p>
+ * Runs on a background thread after the profile update commits. The rebuild streams the user's samples in
+ * chunks, reconciles overlapping providers cluster by cluster, and replaces the rollup rows in one transaction,
+ * so readers see either the old or the new totals. It holds the same per-user advisory lock as the upload path,
+ * which re-reads the timezone under that lock: an upload committed before the rebuild is included in the scan,
+ * one committed after it is bucketed in the new zone, and none is counted twice.
+ * <p>
+ * Without partition retention every rollup row of the user is deleted and rebuilt, so no day keeps totals
+ * bucketed under the old zone. With retention, totals of retired months can no longer be recomputed; rows
+ * before {@code from} are kept, where {@code from} is the day after the first retained sample's day in the old
+ * or the new zone, whichever is earlier. Only samples on or after {@code from} in both zones are re-counted,
+ * so none is counted twice; the few samples of that boundary day that only the old rows held are dropped.
+ */
+@Component
+@Slf4j
+class TimezoneRebucketer {
+
+    private static final ZoneOffset EARLIEST_ZONE = ZoneOffset.ofHours(-12);
+
+    private final StepSampleRepository sampleRepo;
+    private final DailyStepsRepository dailyRepo;
+    private final HourlyStepsRepository hourlyRepo;
+    private final PeriodStepsRepository periodRepo;
+    private final ProviderOverlapReconciler overlapReconciler;
+    private final DailyTotalsCache dailyCache;
+    private final GlobalDailyLeaderboard globalLeaderboard;
+    private final GroupLeaderboards groupLeaderboards;
+    private final UserService userService;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate tx;
+    private final boolean reconcileOverlaps;
+    private final boolean retentionEnabled;
+    private final int chunkSize;
+
+    // Users with a run queued, and the zone their rollups were bucketed in before the first queued change
+    private final Map<Long, ZoneId> pending = new ConcurrentHashMap<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "step-rebucket");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Counter runsDone;
+    private final Counter runsFailed;
+
+    TimezoneRebucketer(
+            StepSampleRepository sampleRepo,
+            DailyStepsRepository dailyRepo,
+            HourlyStepsRepository hourlyRepo,
+            PeriodStepsRepository periodRepo,
+            ProviderOverlapReconciler overlapReconciler,
+            DailyTotalsCache dailyCache,
+            GlobalDailyLeaderboard globalLeaderboard,
+            GroupLeaderboards groupLeaderboards,
+            UserService userService,
+            ApplicationEventPublisher events,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${steps.reconcile.enabled:true}") boolean reconcileOverlaps,
+            @Value("${steps.partitions.retention-months:0}") int retentionMonths,
+            @Value("${steps.rebucket.chunk-size:1000}") int chunkSize
+    ) {
+        this.sampleRepo = sampleRepo;
+        this.dailyRepo = dailyRepo;
+        this.hourlyRepo = hourlyRepo;
+        this.periodRepo = periodRepo;
+        this.overlapReconciler = overlapReconciler;
+        this.dailyCache = dailyCache;
+        this.globalLeaderboard = globalLeaderboard;
+        this.groupLeaderboards = groupLeaderboards;
+        this.userService = userService;
+        this.events = events;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.reconcileOverlaps = reconcileOverlaps;
+        this.retentionEnabled = retentionMonths > 0;
+        this.chunkSize = Math.max(1, chunkSize);
+
+        this.runsDone = Counter.builder("steps.rebucket.runs").tag("outcome", "done").register(meterRegistry);
+        this.runsFailed = Counter.builder("steps.rebucket.runs").tag("outcome", "failed").register(meterRegistry);
+    }
+
+    @TransactionalEventListener
+    void onTimezoneChanged(UserTimezoneChangedEvent event) {
+        // Several quick changes collapse into one run; the run always reads the latest committed zone
+        ZoneId previous = event.previousTimezone() != null ? ZoneId.of(event.previousTimezone()) : ZoneOffset.UTC;
+        if (pending.putIfAbsent(event.userId(), previous) == null) {
+            worker.submit(() -> run(event.userId()));
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        worker.shutdown();
+        if (!worker.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Timezone re-bucketing did not finish in time, {} users left", pending.size());
+            worker.shutdownNow();
+        }
+    }
+
+    private void run(Long userId) {
+        ZoneId previous = pending.remove(userId);
+        try {
+            tx.executeWithoutResult(status -> rebuild(userId, previous));
+            runsDone.increment();
+        } catch (RuntimeException e) {
+            runsFailed.increment();
+            log.error("Timezone re-bucketing failed for user={}", userId, e);
+        }
+    }
+
+    /**
+     * Recomputes and swaps in all rollups of one user whose rows were bucketed in {@code previous}.
+     * Must run inside a transaction.
+     */
+    void rebuild(Long userId, ZoneId previous) {
+        sampleRepo.lockUser(userId);
+        ZoneId zone = userService.findTimezone(userId).map(ZoneId::of).orElse(ZoneOffset.UTC);
+
+        Optional<OffsetDateTime> first = sampleRepo.findFirstStartedAt(userId);
+        if (first.isEmpty()) {
+            log.info("Timezone re-bucketing for user={}: no samples, nothing to rebuild", userId);
+            return;
+        }
+        LocalDate from;
+        Instant boundary;
+        if (retentionEnabled) {
+            LocalDate oldDay = first.get().atZoneSameInstant(previous).toLocalDate();
+            LocalDate newDay = first.get().atZoneSameInstant(zone).toLocalDate();
+            from = (oldDay.isBefore(newDay) ? oldDay : newDay).plusDays(1);
+            // Samples before the later of the two midnights may sit in a kept row of the old zone
+            Instant oldStart = from.atStartOfDay(previous).toInstant();
+            Instant newStart = from.atStartOfDay(zone).toInstant();
+            boundary = oldStart.isAfter(newStart) ? oldStart : newStart;
+        } else {
+            // No zone puts a sample on an earlier local date than UTC-12; bounds the dates readers must refresh
+            from = first.get().atZoneSameInstant(EARLIEST_ZONE).toLocalDate();
+            boundary = first.get().toInstant();
+        }
+
+        Map<LocalDate, Long> daily = new HashMap<>();
+        Map<LocalDateTime, Long> hourly = new HashMap<>();
+        List<SampleInterval> cluster = new ArrayList<>();
+        Instant[] clusterEnd = {null};
+        long[] scanned = {0};
+
+        // Samples up to MAX_SAMPLE_DURATION before the boundary only serve as overlap context
+        OffsetDateTime scanFrom = boundary.minus(StepService.MAX_SAMPLE_DURATION).atOffset(ZoneOffset.UTC);
+        sampleRepo.forEachIntervalSince(userId, scanFrom, chunkSize, s -> {
+            scanned[0]++;
+            Instant start = s.startedAt().toInstant();
+            if (!cluster.isEmpty() && start.isAfter(clusterEnd[0])) {
+                bucket(cluster, boundary, zone, daily, hourly);
+                cluster.clear();
+                clusterEnd[0] = null;
+            }
+            cluster.add(s);
+            Instant end = s.endedAt().toInstant();
+            if (clusterEnd[0] == null || end.isAfter(clusterEnd[0])) clusterEnd[0] = end;
+        });
+        bucket(cluster, boundary, zone, daily, hourly);
+
+        if (retentionEnabled) dailyRepo.replaceTotalsFrom(userId, from, daily);
+        else dailyRepo.replaceAllTotals(userId, daily);
+        dailyRepo.bumpVersion(userId);
+        dailyCache.recordReplace(userId);
+        globalLeaderboard.recordReplace(userId, from, daily);
+        groupLeaderboards.recordReplace(userId, from, daily);
+        events.publishEvent(new DailyTotalsChangedEvent(userId, from, LocalDate.MAX));
+        if (retentionEnabled) hourlyRepo.replaceTotalsFrom(userId, from, hourly);
+        else hourlyRepo.replaceAllTotals(userId, hourly);
+        periodRepo.rebuildFromDaily(userId);
+        log.info("Timezone re-bucketing for user={} zone={} from={}: {} samples, {} days",
+                userId, zone, from, scanned[0], daily.size());
+    }
+
+    private void bucket(List<SampleInterval> cluster, Instant boundary, ZoneId zone,
+                        Map<LocalDate, Long> daily, Map<LocalDateTime, Long> hourly) {
+        if (cluster.isEmpty()) return;
+        long[] contribution = reconcileOverlaps ? overlapReconciler.contributions(cluster) : null;
+        for (int i = 0; i < cluster.size(); i++) {
+            var s = cluster.get(i);
+            if (s.startedAt().toInstant().isBefore(boundary)) continue;
+            long steps = contribution != null ? contribution[i] : s.steps();
+            // Same bucketing rule as ingest: the sample's start picks the local date and hour
+            LocalDateTime local = s.startedAt().atZoneSameInstant(zone).toLocalDateTime();
+            daily.merge(local.toLocalDate(), steps, Long::sum);
+            hourly.merge(local.truncatedTo(ChronoUnit.HOURS), steps, Long::sum);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.stepapp.steps;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key support for uploads, synchronous (the upload's result is stored) and asynchronous (the
+ * queued job is stored, so a retry gets the same job id back instead of queueing the batch again).
+ * Responses are kept in a bounded in-memory LRU keyed by (user, key) and optionally
+ * mirrored to the idempotency_keys table so replays survive restarts and hit any node.
+ * Concurrent requests with the same key on one node wait for the one in flight instead of executing again.
+ * <p>
+ * In persistent mode a node claims the key with a pending row before running the upload, so the same key
+ * sent to two nodes runs once: the other node answers 409 (with Retry-After) until the response is stored.
+ * A failed upload releases its claim; the claim of a node that died mid-upload expires after
+ * {@code claim-timeout}, after which a retry runs the upload again (sample-level dedup still applies).
+ * <p>
+ * Each key remembers a SHA-256 of the request it was first used with (its JSON form plus the kind of response,
+ * so a synchronous and an asynchronous upload never share a key); reusing the key for a different request
+ * fails with {@link IdempotencyKeyMismatchException} instead of replaying a response that does not describe it.
+ */
+@Component
+@Slf4j
+public class UploadIdempotencyStore {
+
+    private static final int MAX_KEY_LENGTH = 200;
+
+    private record CacheKey(Long userId, String key) {}
+
+    private record Entry(Object response, String requestHash, long expiresAtMillis) {}
+
+    private record InFlight(String requestHash, CompletableFuture<Object> result) {}
+
+    private final IdempotencyRecordRepository recordRepo;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final boolean persistent;
+    private final Duration inFlightWait;
+    private final Duration claimTimeout;
+
+    private final Map<CacheKey, Entry> cache;
+    private final ConcurrentMap<CacheKey, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public UploadIdempotencyStore(
+            IdempotencyRecordRepository recordRepo,
+            ObjectMapper objectMapper,
+            @Value("${steps.idempotency.max-entries:100000}") int maxEntries,
+            @Value("${steps.idempotency.ttl:PT24H}") Duration ttl,
+            @Value("${steps.idempotency.persistent:false}") boolean persistent,
+            @Value("${steps.idempotency.in-flight-wait:PT30S}") Duration inFlightWait,
+            @Value("${steps.idempotency.claim-timeout:PT5M}") Duration claimTimeout
+    ) {
+        this.recordRepo = recordRepo;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.persistent = persistent;
+        this.inFlightWait = inFlightWait;
+        this.claimTimeout = claimTimeout;
+        this.cache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Runs the upload once per (user, key) within the TTL and replays the stored response afterwards.
+     * {@code request} is the request body the key is bound to; {@code responseType} the type of the stored
+     * response. A blank key disables idempotency for the call.
+     */
+    public <T> T execute(Long userId, String key, Object request, Class<T> responseType, Supplier<T> upload) {
+        if (key == null || key.isBlank()) {
+            return upload.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key is too long");
+        }
+        CacheKey ck = new CacheKey(userId, key);
+        String requestHash = requestHash(request, responseType);
+
+        while (true) {
+            Optional<T> stored = lookup(ck, requestHash, responseType);
+            if (stored.isPresent()) return stored.get();
+
+            InFlight mine = new InFlight(requestHash, new CompletableFuture<>());
+            InFlight running = inFlight.putIfAbsent(ck, mine);
+            if (running != null) {
+                checkSameRequest(running.requestHash(), requestHash);
+                Object replay = awaitInFlight(running.result());
+                if (replay != null) return responseType.cast(replay);
+                // The original attempt failed: loop and let one of the waiters run it again
+                continue;
+            }
+
+            OffsetDateTime claimedAt = null;
+            try {
+                if (persistent) {
+                    claimedAt = claim(ck, requestHash);
+                    if (claimedAt == null) {
+                        // Another node holds the key: replay its response if it finished in between
+                        stored = lookup(ck, requestHash, responseType);
+                        if (stored.isPresent()) {
+                            mine.result().complete(stored.get());
+                            return stored.get();
+                        }
+                        throw new IdempotencyKeyInProgressException(
+                                "A request with the same Idempotency-Key is still in progress");
+                    }
+                }
+                T response = upload.get();
+                remember(ck, requestHash, response, claimedAt);
+                mine.result().complete(response);
+                return response;
+            } catch (RuntimeException e) {
+                if (claimedAt != null) recordRepo.release(ck.userId(), ck.key(), claimedAt);
+                mine.result().completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(ck, mine);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${steps.idempotency.purge-interval:PT1H}")
+    void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            cache.values().removeIf(e -> e.expiresAtMillis() <= now);
+        }
+        if (persistent) {
+            int removed = recordRepo.deleteExpired(OffsetDateTime.now());
+            if (removed > 0) log.debug("Purged {} expired idempotency records", removed);
+        }
+    }
+
+    /**
+     * The stored response of the key, if any; fails when the key is stored or claimed for a different request.
+     */
+    private <T> Optional<T> lookup(CacheKey ck, String requestHash, Class<T> responseType) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Entry e = cache.get(ck);
+            if (e != null) {
+                if (e.expiresAtMillis() > now) {
+                    checkSameRequest(e.requestHash(), requestHash);
+                    return Optional.of(responseType.cast(e.response()));
+                }
+                cache.remove(ck);
+            }
+        }
+        if (!persistent) return Optional.empty();
+
+        return recordRepo.findByUserIdAndKeyAndExpiresAtAfter(ck.userId(), ck.key(), OffsetDateTime.now())
+                .filter(r -> {
+                    // Rows stored before request hashes existed have none and are replayed as before
+                    if (r.getRequestHash() != null) checkSameRequest(r.getRequestHash(), requestHash);
+                    return r.getResponse() != null;
+                })
+                .map(r -> {
+                    T response = fromJson(r.getResponse(), responseType);
+                    synchronized (cache) {
+                        cache.put(ck, new Entry(response, requestHash, r.getExpiresAt().toInstant().toEpochMilli()));
+                    }
+                    return response;
+                });
+    }
+
+    private static void checkSameRequest(String storedHash, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            throw new IdempotencyKeyMismatchException("Idempotency-Key was already used with a different request");
+        }
+    }
+
+    /**
+     * Claim time (truncated to the column's precision, it identifies the claim) or null when the key is held.
+     */
+    private OffsetDateTime claim(CacheKey ck, String requestHash) {
+        OffsetDateTime now = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        return recordRepo.claim(ck.userId(), ck.key(), requestHash, now, now.plus(claimTimeout)) == 1 ? now : null;
+    }
+
+    private void remember(CacheKey ck, String requestHash, Object response, OffsetDateTime claimedAt) {
+        OffsetDateTime expiresAt = OffsetDateTime.now().plus(ttl);
+        synchronized (cache) {
+            cache.put(ck, new Entry(response, requestHash, expiresAt.toInstant().toEpochMilli()));
+        }
+        if (claimedAt == null) return;
+
+        if (recordRepo.complete(ck.userId(), ck.key(), claimedAt, toJson(response), expiresAt) == 0) {
+            // Ran past claim-timeout and another node took the key over; its response will be stored instead
+            log.warn("Idempotency claim for user={} key={} expired before the upload finished", ck.userId(), ck.key());
+        }
+    }
+
+    private Object awaitInFlight(CompletableFuture<Object> running) {
+        try {
+            return running.get(inFlightWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException("A request with the same Idempotency-Key is still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException("Interrupted while waiting for in-flight request");
+        }
+    }
+
+    private String requestHash(Object request, Class<?> responseType) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(responseType.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot hash upload request", e);
+        }
+    }
+
+    private String toJson(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize upload response", e);
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> responseType) {
+        try {
+            return objectMapper.readValue(json, responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot deserialize stored upload response", e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.stepapp.steps.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Caller's position on the global leaderboard; rank is null when they have no steps on the date.
+ */
+public record GlobalRankDto(
+        LocalDate date,
+        Long rank,
+        long steps,
+        long participants
+) {}
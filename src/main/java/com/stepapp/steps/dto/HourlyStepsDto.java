@@ -0,0 +1,6 @@
+package com.stepapp.steps.dto;
+
+public record HourlyStepsDto(
+        int hour,
+        Long steps
+) {}
@@ -0,0 +1,8 @@
+package com.stepapp.steps.dto;
+
+public record IngestJobDto(
+        String jobId,
+        String status,
+        UploadStepsResponse result,
+        String error
+) {}
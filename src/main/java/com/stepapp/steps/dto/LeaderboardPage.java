@@ -0,0 +1,8 @@
+package com.stepapp.steps.dto;
+
+import java.util.List;
+
+/**
+ * One page of a leaderboard; nextCursor is null on the last page.
+ */
+public record LeaderboardPage<T>(List<T> entries, String nextCursor) {}
@@ -0,0 +1,16 @@
+package com.stepapp.steps.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Share of the other users of the date with fewer steps than the caller, in percent.
+ * The true value lies within percentBelow ± errorMargin (percentage points); the margin covers users whose
+ * totals fall in the caller's histogram bucket (within 0.8% of the caller's steps).
+ */
+public record PercentileDto(
+        LocalDate date,
+        long steps,
+        long participants,
+        double percentBelow,
+        double errorMargin
+) {}
@@ -0,0 +1,7 @@
+package com.stepapp.steps.dto;
+
+public record RankedEntryDto(
+        long rank,
+        String username,
+        long steps
+) {}
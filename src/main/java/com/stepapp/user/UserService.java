@@ -2,10 +2,17 @@ package com.stepapp.user;
 
 import com.stepapp.user.dto.UpdateProfileRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -13,6 +20,7 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher events;
 
     @Transactional(readOnly = true)
     public Optional<User> findByEmail(String email) {
@@ -30,6 +38,25 @@ public class UserService {
                 .orElseThrow(() -> new NoSuchElementException("User not found"));
     }
 
+    /**
+     * The user's timezone as currently committed, bypassing any entity already loaded in the caller.
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> findTimezone(Long userId) {
+        return userRepository.findTimezoneById(userId);
+    }
+
+    /**
+     * Usernames of the given users in one query; unknown ids are absent.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, String> usernamesById(Collection<Long> userIds) {
+        Map<Long, String> out = new HashMap<>(userIds.size() * 2);
+        if (userIds.isEmpty()) return out;
+        for (Object[] row : userRepository.findUsernamesByIds(userIds)) out.put((Long) row[0], (String) row[1]);
+        return out;
+    }
+
     @Transactional
     public User save(User user) {
         return userRepository.save(user);
@@ -42,8 +69,21 @@ public class UserService {
 
         if (req.fullName() != null)  u.setFullName(req.fullName());
         if (req.avatarUrl() != null) u.setAvatarUrl(req.avatarUrl());
-        if (req.timezone() != null)  u.setTimezone(req.timezone());
+        String previousTimezone = u.getTimezone();
+        if (req.timezone() != null)  u.setTimezone(validTimezone(req.timezone()));
+
+        User saved = userRepository.save(u);
+        if (!Objects.equals(previousTimezone, saved.getTimezone())) {
+            events.publishEvent(new UserTimezoneChangedEvent(saved.getId(), previousTimezone, saved.getTimezone()));
+        }
+        return saved;
+    }
 
-        return userRepository.save(u);
+    private static String validTimezone(String timezone) {
+        try {
+            return ZoneId.of(timezone).getId();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Unknown timezone: " + timezone);
+        }
     }
 }
@@ -0,0 +1,7 @@
+package com.stepapp.user;
+
+/**
+ * Published by {@link UserService#updateProfile} when a user's timezone changes.
+ * Listeners that derive per-day data from the timezone should react after commit.
+ */
+public record UserTimezoneChangedEvent(Long userId, String previousTimezone, String timezone) {}
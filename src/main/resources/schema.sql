@@ -0,0 +1,73 @@
+-- Runs before Hibernate's ddl-auto (spring.sql.init), statements separated by @@.
+-- step_samples is range-partitioned by month on started_at. Postgres requires every unique key of a
+-- partitioned table to contain the partition key, hence started_at in the primary and dedup keys.
+-- An existing unpartitioned step_samples table is migrated once into the partitioned layout.
+-- Further partitions are created and retired by StepSamplePartitionMaintainer.
+
+DO $$
+DECLARE
+    m  date;
+    hi date;
+BEGIN
+    IF to_regclass('public.step_samples') IS NOT NULL
+       AND NOT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'public.step_samples'::regclass) THEN
+        ALTER TABLE public.step_samples RENAME TO step_samples_legacy;
+    END IF;
+
+    IF to_regclass('public.step_samples') IS NULL THEN
+        CREATE TABLE public.step_samples (
+            id          BIGINT GENERATED BY DEFAULT AS IDENTITY,
+            user_id     BIGINT                   NOT NULL,
+            provider    VARCHAR(20)              NOT NULL,
+            external_id VARCHAR(200),
+            started_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            ended_at    TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            steps       INTEGER                  NOT NULL,
+            source      VARCHAR(200),
+            received_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+            CONSTRAINT pk_step_samples PRIMARY KEY (id, started_at),
+            CONSTRAINT uk_step_samples_dedup UNIQUE (user_id, provider, external_id, started_at)
+        ) PARTITION BY RANGE (started_at);
+        CREATE TABLE public.step_samples_default PARTITION OF public.step_samples DEFAULT;
+    END IF;
+
+    IF to_regclass('public.step_samples_legacy') IS NOT NULL THEN
+        SELECT date_trunc('month', min(started_at) AT TIME ZONE 'UTC')::date,
+               date_trunc('month', max(started_at) AT TIME ZONE 'UTC')::date
+        INTO m, hi
+        FROM public.step_samples_legacy;
+
+        WHILE m IS NOT NULL AND m <= hi LOOP
+            EXECUTE format('CREATE TABLE IF NOT EXISTS public.%I PARTITION OF public.step_samples FOR VALUES FROM (%L) TO (%L)',
+                           'step_samples_p' || to_char(m, 'YYYYMM'),
+                           m::timestamp AT TIME ZONE 'UTC',
+                           (m + interval '1 month')::timestamp AT TIME ZONE 'UTC');
+            m := m + interval '1 month';
+        END LOOP;
+
+        INSERT INTO public.step_samples (id, user_id, provider, external_id, started_at, ended_at, steps, source, received_at)
+        SELECT id, user_id, provider, external_id, started_at, ended_at, steps, source, received_at
+        FROM public.step_samples_legacy
+        ON CONFLICT DO NOTHING;
+
+        PERFORM setval(pg_get_serial_sequence('public.step_samples', 'id'),
+                       COALESCE((SELECT max(id) FROM public.step_samples), 0) + 1, false);
+        DROP TABLE public.step_samples_legacy;
+    END IF;
+END
+$$@@
+
+-- idempotency_keys rows without a response are pending claims (UploadIdempotencyStore)
+DO $$
+BEGIN
+    IF to_regclass('public.idempotency_keys') IS NOT NULL THEN
+        ALTER TABLE public.idempotency_keys ALTER COLUMN response DROP NOT NULL;
+    END IF;
+END
+$$@@
+
+-- One row per one-time startup migration that has completed (e.g. FriendshipBackfill)
+CREATE TABLE IF NOT EXISTS public.startup_migrations (
+    name         VARCHAR(100) PRIMARY KEY,
+    completed_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+)@@
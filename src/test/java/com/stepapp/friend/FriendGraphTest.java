@@ -0,0 +1,81 @@
+package com.stepapp.friend;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FriendGraphTest {
+
+    private final FriendGraph graph = new FriendGraph(new SimpleMeterRegistry(), true, 100, Duration.ofMinutes(15));
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void secondReadHitsWithoutLoading() {
+        AtomicInteger loads = new AtomicInteger();
+        FriendGraph.Loader loader = userId -> {
+            loads.incrementAndGet();
+            return List.of(9L, 3L, 5L);
+        };
+
+        assertThat(graph.friendsOf(1L, loader).toList()).containsExactly(3L, 5L, 9L);
+        assertThat(graph.friendsOf(1L, loader).contains(5L)).isTrue();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void committedChangePatchesBothCachedLists() {
+        graph.friendsOf(1L, userId -> List.of(3L));
+        graph.friendsOf(2L, userId -> List.of());
+
+        commit(() -> graph.recordChange(1L, 2L, true));
+        assertThat(graph.friendsOf(1L, userId -> List.of()).toList()).containsExactly(2L, 3L);
+        assertThat(graph.friendsOf(2L, userId -> List.of()).toList()).containsExactly(1L);
+
+        commit(() -> graph.recordChange(2L, 1L, false));
+        assertThat(graph.friendsOf(1L, userId -> List.of()).toList()).containsExactly(3L);
+    }
+
+    @Test
+    void loadRacingAChangeIsReturnedButNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        FriendGraph.Loader racingLoader = userId -> {
+            loads.incrementAndGet();
+            // A friendship commits while the rows are being read; whether the read saw it is unknown
+            commit(() -> graph.recordChange(1L, 2L, true));
+            return List.of(2L);
+        };
+
+        assertThat(graph.friendsOf(1L, racingLoader).toList()).containsExactly(2L);
+        graph.friendsOf(1L, userId -> {
+            loads.incrementAndGet();
+            return List.of(2L);
+        });
+        assertThat(loads).hasValue(2);
+    }
+
+    private static void commit(Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+            for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+                s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.stepapp.friend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FriendSuggestionsTest {
+
+    @Test
+    void ranksFriendsOfFriendsByMutualCountAndSkipsContacts() {
+        var edges = new FriendSuggestions.Edges();
+        // 1 is friends with 2, 3, 4; 5 knows 2, 3 and 4; 6 knows 2; 7 knows 3, 4
+        edges.add(1, 2, true);
+        edges.add(3, 1, true);
+        edges.add(1, 4, true);
+        edges.add(2, 1, true);      // request in the other direction as well
+        edges.add(5, 2, true);
+        edges.add(5, 3, true);
+        edges.add(4, 5, true);
+        edges.add(6, 2, true);
+        edges.add(7, 3, true);
+        edges.add(7, 4, true);
+        edges.add(1, 7, false);     // pending: 7 is already a contact of 1
+
+        var store = FriendSuggestions.compute(edges, 2, 100, 2, ForkJoinPool.commonPool());
+
+        assertThat(store.forUser(1)).containsExactly(
+                new FriendSuggestions.Suggestion(5, 3),
+                new FriendSuggestions.Suggestion(6, 1));
+        // 6 and 5 share friend 2; 6 and 7 share nobody
+        assertThat(store.forUser(6)).containsExactly(
+                new FriendSuggestions.Suggestion(1, 1),
+                new FriendSuggestions.Suggestion(5, 1));
+        assertThat(store.forUser(99)).isEmpty();
+    }
+
+    @Test
+    void popularFriendsAreNotExpanded() {
+        var edges = new FriendSuggestions.Edges();
+        edges.add(1, 2, true);
+        edges.add(2, 3, true);
+        edges.add(2, 4, true);
+        edges.add(1, 5, true);
+        edges.add(5, 4, true);
+
+        // 2 has three friends, above the fan-out limit; 5 has two
+        var store = FriendSuggestions.compute(edges, 10, 2, 1024, ForkJoinPool.commonPool());
+
+        assertThat(store.forUser(1)).containsExactly(new FriendSuggestions.Suggestion(4, 1));
+    }
+}
@@ -0,0 +1,118 @@
+package com.stepapp.friend;
+
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.common.db.StartupMigrations;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Responses to friend requests keep the friendships edge table in step with accepted requests.
+ */
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+class FriendshipLinkTest {
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private FriendshipRepository friendshipRepo;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StartupMigrations migrations;
+
+    @Test
+    void acceptLinksBothDirections() {
+        User a = newUser(), b = newUser();
+        var request = friendService.sendRequest(a.getUsername(), b.getUsername());
+
+        friendService.respondToRequest(request.id(), b.getUsername(), true);
+
+        assertThat(friendshipRepo.findFriendIds(a.getId())).containsExactly(b.getId());
+        assertThat(friendshipRepo.findFriendIds(b.getId())).containsExactly(a.getId());
+        assertThat(friendService.listFriends(a.getUsername())).containsExactly(b.getUsername());
+    }
+
+    @Test
+    void rejectAfterAcceptUnlinks() {
+        User a = newUser(), b = newUser();
+        var request = friendService.sendRequest(a.getUsername(), b.getUsername());
+        friendService.respondToRequest(request.id(), b.getUsername(), true);
+
+        friendService.respondToRequest(request.id(), b.getUsername(), false);
+
+        assertThat(friendshipRepo.findFriendIds(a.getId())).isEmpty();
+        assertThat(friendshipRepo.findFriendIds(b.getId())).isEmpty();
+        assertThat(friendService.listFriends(b.getUsername())).isEmpty();
+    }
+
+    @Test
+    void rejectKeepsTheEdgeWhileTheReverseRequestIsAccepted() {
+        User a = newUser(), b = newUser();
+        var forward = friendService.sendRequest(a.getUsername(), b.getUsername());
+        var reverse = friendService.sendRequest(b.getUsername(), a.getUsername());
+        friendService.respondToRequest(forward.id(), b.getUsername(), true);
+        friendService.respondToRequest(reverse.id(), a.getUsername(), true);
+
+        friendService.respondToRequest(forward.id(), b.getUsername(), false);
+
+        assertThat(friendshipRepo.findFriendIds(a.getId())).containsExactly(b.getId());
+        assertThat(friendshipRepo.findFriendIds(b.getId())).containsExactly(a.getId());
+    }
+
+    @Test
+    void backfillRestoresMissingEdgesOfAcceptedRequestsOnly() {
+        User a = newUser(), b = newUser(), c = newUser();
+        var accepted = friendService.sendRequest(a.getUsername(), b.getUsername());
+        friendService.respondToRequest(accepted.id(), b.getUsername(), true);
+        friendService.sendRequest(a.getUsername(), c.getUsername()); // stays pending
+        jdbcTemplate.update("DELETE FROM friendships WHERE user_id = ? OR friend_id = ?", a.getId(), a.getId());
+
+        new FriendshipBackfill(migrations, friendshipRepo, true).backfill();
+
+        assertThat(friendshipRepo.findFriendIds(a.getId())).containsExactly(b.getId());
+        assertThat(friendshipRepo.findFriendIds(b.getId())).containsExactly(a.getId());
+        assertThat(friendshipRepo.findFriendIds(c.getId())).isEmpty();
+    }
+
+    @Test
+    void unforcedBackfillRunsOnceUntilTheMarkerIsRecorded() {
+        User a = newUser(), b = newUser();
+        var accepted = friendService.sendRequest(a.getUsername(), b.getUsername());
+        friendService.respondToRequest(accepted.id(), b.getUsername(), true);
+        jdbcTemplate.update("DELETE FROM startup_migrations WHERE name = ?", FriendshipBackfill.MIGRATION);
+        jdbcTemplate.update("DELETE FROM friendships WHERE user_id = ? OR friend_id = ?", a.getId(), a.getId());
+
+        new FriendshipBackfill(migrations, friendshipRepo, false).backfill();
+        assertThat(friendshipRepo.findFriendIds(a.getId())).containsExactly(b.getId());
+
+        jdbcTemplate.update("DELETE FROM friendships WHERE user_id = ? OR friend_id = ?", a.getId(), a.getId());
+        new FriendshipBackfill(migrations, friendshipRepo, false).backfill();
+        assertThat(friendshipRepo.findFriendIds(a.getId())).isEmpty();
+    }
+
+    private User newUser() {
+        String username = "fr_" + UUID.randomUUID().toString().substring(0, 8);
+        return userService.save(User.builder()
+                .email(username + "@test.local")
+                .username(username)
+                .passwordHash("x")
+                .timezone("UTC")
+                .build());
+    }
+}
@@ -0,0 +1,96 @@
+package com.stepapp.steps;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.stepapp.steps.dto.StepSampleDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode throughput of the compact binary upload format vs. NDJSON, on minute-resolution data.
+ * Run with: java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main CompactSampleCodecBenchmark
+ * The main method prints the payload size comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactSampleCodecBenchmark {
+
+    @Param({"1440", "43200"})
+    int samples;
+
+    private byte[] compact;
+    private byte[] ndjson;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        List<StepSampleDto> data = minuteSamples(samples);
+        compact = CompactSampleCodec.encode("APPLE", data);
+        ndjson = toNdjson(mapper, data);
+    }
+
+    @Benchmark
+    public void decodeCompact(Blackhole bh) throws IOException {
+        var decoder = new CompactSampleCodec.Decoder(new ByteArrayInputStream(compact));
+        for (StepSampleDto dto = decoder.next(); dto != null; dto = decoder.next()) {
+            bh.consume(dto);
+        }
+    }
+
+    @Benchmark
+    public void decodeNdjson(Blackhole bh) throws IOException {
+        try (MappingIterator<StepSampleDto> it = mapper.readerFor(StepSampleDto.class).readValues(ndjson)) {
+            while (it.hasNextValue()) bh.consume(it.nextValue());
+        }
+    }
+
+    static List<StepSampleDto> minuteSamples(int n) {
+        OffsetDateTime t = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        String[] sources = {"iPhone", "Apple Watch"};
+        List<StepSampleDto> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            OffsetDateTime start = t.plusMinutes(i);
+            out.add(new StepSampleDto(UUID.nameUUIDFromBytes(("s" + i).getBytes()).toString(),
+                    start, start.plusMinutes(1), 40 + (i * 37) % 90, sources[i % 2]));
+        }
+        return out;
+    }
+
+    static byte[] toNdjson(ObjectMapper mapper, List<StepSampleDto> data) throws IOException {
+        var out = new java.io.ByteArrayOutputStream();
+        for (var dto : data) {
+            out.write(mapper.writeValueAsBytes(dto));
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        var mapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        for (int n : new int[]{1440, 43200}) {
+            List<StepSampleDto> data = minuteSamples(n);
+            int c = CompactSampleCodec.encode("APPLE", data).length;
+            int j = toNdjson(mapper, data).length;
+            System.out.printf("samples=%d ndjson=%d B (%.1f B/sample) compact=%d B (%.1f B/sample) ratio=%.2fx%n",
+                    n, j, (double) j / n, c, (double) c / n, (double) j / c);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.stepapp.steps;
+
+import com.stepapp.steps.dto.StepSampleDto;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompactSampleCodecTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2025, 3, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void roundTripsSamplesInAnyOrderWithSourcesAndMissingFields() throws IOException {
+        var samples = List.of(
+                new StepSampleDto("a", T0, T0.plusMinutes(1), 120, "watch"),
+                new StepSampleDto(null, T0.minusHours(3), T0.minusHours(3).plusSeconds(30), 0, null),
+                new StepSampleDto("c", T0.plusDays(1), T0.plusDays(1).plusMinutes(5), 900, "phone"),
+                new StepSampleDto("d", T0.plusDays(1), T0.plusDays(1), 7, "watch"),
+                new StepSampleDto("e", T0.plusNanos(250_000_000), T0.plusSeconds(61).plusNanos(999_000_000), 64, "watch"));
+
+        var decoder = new CompactSampleCodec.Decoder(new ByteArrayInputStream(CompactSampleCodec.encode("APPLE", samples)));
+
+        assertThat(decoder.provider()).isEqualTo("APPLE");
+        List<StepSampleDto> decoded = new ArrayList<>();
+        for (StepSampleDto s = decoder.next(); s != null; s = decoder.next()) decoded.add(s);
+        assertThat(decoded).isEqualTo(samples);
+    }
+
+    @Test
+    void rejectsMissingProviderAndBadMagic() {
+        assertThatThrownBy(() -> decode(header(null, 0)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("provider");
+        assertThatThrownBy(() -> decode("NOPE".getBytes(StandardCharsets.US_ASCII)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsStartsOutsideTheSupportedRange() throws IOException {
+        assertThatThrownBy(() -> decode(header("APPLE", Long.MAX_VALUE)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("start");
+
+        var out = new ByteArrayOutputStream();
+        out.write(header("APPLE", T0.toInstant().toEpochMilli()));
+        sample(out, Long.MAX_VALUE - 5, 60_000, 10, 0); // delta overflowing the previous start
+        assertThatThrownBy(() -> decode(out.toByteArray()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("start");
+    }
+
+    @Test
+    void rejectsDurationsThatOverflowTheEndTime() throws IOException {
+        for (long duration : new long[]{-1, Long.MAX_VALUE}) {
+            var out = new ByteArrayOutputStream();
+            out.write(header("APPLE", T0.toInstant().toEpochMilli()));
+            sample(out, 0, duration, 10, 0);
+            assertThatThrownBy(() -> decode(out.toByteArray()))
+                    .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("duration");
+        }
+    }
+
+    @Test
+    void rejectsNegativeCountsAndLengths() throws IOException {
+        var steps = new ByteArrayOutputStream();
+        steps.write(header("APPLE", T0.toInstant().toEpochMilli()));
+        sample(steps, 0, 60_000, -1, 0);
+        assertThatThrownBy(() -> decode(steps.toByteArray())).isInstanceOf(IllegalArgumentException.class);
+
+        var length = new ByteArrayOutputStream();
+        length.write(header("APPLE", T0.toInstant().toEpochMilli()));
+        CompactSampleCodec.writeVarLong(length, 0);
+        CompactSampleCodec.writeVarLong(length, 60_000);
+        CompactSampleCodec.writeVarLong(length, 10);
+        CompactSampleCodec.writeVarLong(length, 0);
+        CompactSampleCodec.writeVarLong(length, -1); // externalId byte length
+        assertThatThrownBy(() -> decode(length.toByteArray())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOverlongVarintsAndReportsTruncation() throws IOException {
+        var overlong = new ByteArrayOutputStream();
+        overlong.write(header("APPLE", T0.toInstant().toEpochMilli()));
+        for (int i = 0; i < 11; i++) overlong.write(0xFF);
+        assertThatThrownBy(() -> decode(overlong.toByteArray()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("varint");
+
+        byte[] valid = CompactSampleCodec.encode("APPLE", List.of(new StepSampleDto("a", T0, T0.plusMinutes(1), 5, null)));
+        assertThatThrownBy(() -> decode(Arrays.copyOf(valid, valid.length - 1))).isInstanceOf(EOFException.class);
+        assertThatThrownBy(() -> decode(Arrays.copyOf(valid, 6))).isInstanceOf(EOFException.class);
+    }
+
+    private static List<StepSampleDto> decode(byte[] payload) throws IOException {
+        var decoder = new CompactSampleCodec.Decoder(new ByteArrayInputStream(payload));
+        List<StepSampleDto> out = new ArrayList<>();
+        for (StepSampleDto s = decoder.next(); s != null; s = decoder.next()) out.add(s);
+        return out;
+    }
+
+    private static byte[] header(String provider, long baseEpochMilli) throws IOException {
+        var out = new ByteArrayOutputStream();
+        out.write("STP1".getBytes(StandardCharsets.US_ASCII));
+        byte[] name = provider == null ? new byte[0] : provider.getBytes(StandardCharsets.UTF_8);
+        CompactSampleCodec.writeVarLong(out, name.length);
+        out.write(name);
+        CompactSampleCodec.writeVarLong(out, 0); // no sources
+        CompactSampleCodec.writeVarLong(out, CompactSampleCodec.zigZagEncode(baseEpochMilli));
+        return out.toByteArray();
+    }
+
+    private static void sample(ByteArrayOutputStream out, long startDelta, long duration, long steps, long sourceRef)
+            throws IOException {
+        CompactSampleCodec.writeVarLong(out, CompactSampleCodec.zigZagEncode(startDelta));
+        CompactSampleCodec.writeVarLong(out, duration);
+        CompactSampleCodec.writeVarLong(out, steps);
+        CompactSampleCodec.writeVarLong(out, sourceRef);
+        CompactSampleCodec.writeVarLong(out, 0); // no externalId
+    }
+}
@@ -0,0 +1,105 @@
+package com.stepapp.steps;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.stepapp.steps.DailyTotalsCache.MISSING;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DailyTotalsCacheTest {
+
+    private static final LocalDate D1 = LocalDate.of(2025, 3, 1);
+    private static final LocalDate D2 = D1.plusDays(1);
+    private static final LocalDate D3 = D1.plusDays(2);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DailyTotalsCache cache = new DailyTotalsCache(registry, true, 100, 400, Duration.ofMinutes(5));
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void secondReadOfCoveredRangeHitsWithoutLoading() {
+        AtomicInteger loads = new AtomicInteger();
+        DailyTotalsCache.RangeLoader loader = (from, to) -> {
+            loads.incrementAndGet();
+            return Map.of(D1, 100L, D3, 300L);
+        };
+
+        assertThat(cache.getRange(1L, 0, D1, D3, loader)).containsExactly(100, MISSING, 300);
+        assertThat(cache.getRange(1L, 0, D2, D3, loader)).containsExactly(MISSING, 300);
+        assertThat(loads).hasValue(1);
+        assertThat(registry.get("steps.daily.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void committedWriteIsPatchedIntoCachedWindow() {
+        cache.getRange(1L, 3, D1, D3, (from, to) -> Map.of(D1, 100L));
+
+        commit(() -> cache.recordWrite(1L, 4, Map.of(D1, 5L, D2, 7L)));
+
+        assertThat(cache.getRange(1L, 4, D1, D3, (from, to) -> Map.of())).containsExactly(105, 7, MISSING);
+    }
+
+    @Test
+    void windowBehindTheCurrentVersionIsReloaded() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.getRange(1L, 3, D1, D1, (from, to) -> Map.of(D1, 100L));
+
+        // Another node wrote version 4; this node's write of version 5 can't be patched onto version 3
+        commit(() -> cache.recordWrite(1L, 5, Map.of(D1, 5L)));
+        assertThat(cache.getRange(1L, 5, D1, D1, (from, to) -> {
+            loads.incrementAndGet();
+            return Map.of(D1, 125L);
+        })).containsExactly(125);
+
+        // A read at a newer version than the window's does not hit it
+        assertThat(cache.getRange(1L, 6, D1, D1, (from, to) -> {
+            loads.incrementAndGet();
+            return Map.of(D1, 140L);
+        })).containsExactly(140);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void loadRacingAWriteIsReturnedButNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        DailyTotalsCache.RangeLoader racingLoader = (from, to) -> {
+            loads.incrementAndGet();
+            // A write commits while the rows are being read; whether the read saw it is unknown
+            commit(() -> cache.recordWrite(1L, 1, Map.of(D1, 5L)));
+            return Map.of(D1, 105L);
+        };
+
+        assertThat(cache.getRange(1L, 0, D1, D1, racingLoader)).containsExactly(105);
+        assertThat(cache.getRange(1L, 1, D1, D1, (from, to) -> {
+            loads.incrementAndGet();
+            return Map.of(D1, 105L);
+        })).containsExactly(105);
+        assertThat(loads).hasValue(2);
+    }
+
+    private static void commit(Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+            for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+                s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
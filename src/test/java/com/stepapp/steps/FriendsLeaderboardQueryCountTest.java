@@ -0,0 +1,157 @@
+package com.stepapp.steps;
+
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.friend.FriendRequest;
+import com.stepapp.friend.FriendRequestRepository;
+import com.stepapp.friend.FriendshipRepository;
+import com.stepapp.steps.dto.LeaderboardEntryDto;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import({TestcontainersConfiguration.class, FriendsLeaderboardQueryCountTest.StatementCounting.class})
+@SpringBootTest
+class FriendsLeaderboardQueryCountTest {
+
+    private static final int FRIENDS = 300;
+    private static final LocalDate DATE = LocalDate.of(2024, 5, 10);
+
+    @Autowired
+    private StepService stepService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FriendRequestRepository friendRepo;
+
+    @Autowired
+    private FriendshipRepository friendshipRepo;
+
+    @Autowired
+    private DailyStepsRepository dailyRepo;
+
+    @Test
+    void friendsLeaderboardRunsTwoStatementsRegardlessOfFriendCount() {
+        String prefix = "fl_" + UUID.randomUUID().toString().substring(0, 6) + "_";
+        User me = newUser(prefix + "me");
+        dailyRepo.addToTotals(me.getId(), Map.of(DATE, 5_000L));
+        for (int i = 0; i < FRIENDS; i++) {
+            User friend = newUser(prefix + i);
+            // Alternate directions: friendship counts no matter who sent the request
+            boolean iSent = i % 2 == 0;
+            friendRepo.save(FriendRequest.builder()
+                    .sender(iSent ? me : friend)
+                    .receiver(iSent ? friend : me)
+                    .status(FriendRequest.Status.ACCEPTED)
+                    .build());
+            // Accepting writes the edge in both directions
+            friendshipRepo.link(iSent ? me.getId() : friend.getId(), iSent ? friend.getId() : me.getId());
+            if (i % 3 == 0) dailyRepo.addToTotals(friend.getId(), Map.of(DATE, 1_000L + i));
+        }
+        // A pending request must not count as a friendship
+        User stranger = newUser(prefix + "pending");
+        friendRepo.save(FriendRequest.builder().sender(me).receiver(stranger).status(FriendRequest.Status.PENDING).build());
+        dailyRepo.addToTotals(stranger.getId(), Map.of(DATE, 99_999L));
+
+        StatementCounting.start();
+        List<LeaderboardEntryDto> top = stepService.friendsLeaderboard(me.getUsername(), DATE, null, null, 5, null).entries();
+        int statements = StatementCounting.stop();
+
+        // One user lookup plus the single leaderboard statement
+        assertThat(statements).isEqualTo(2);
+        assertThat(top).extracting(LeaderboardEntryDto::username)
+                .containsExactly(prefix + "me", prefix + "297", prefix + "294", prefix + "291", prefix + "288");
+        assertThat(top.get(1).steps()).isEqualTo(1_297L);
+    }
+
+    private User newUser(String username) {
+        return userService.save(User.builder()
+                .email(username + "@test.local")
+                .username(username)
+                .passwordHash("x")
+                .timezone("UTC")
+                .build());
+    }
+
+    /**
+     * Counts statements created on connections handed out to the recording thread only,
+     * so background jobs of the application context cannot skew the numbers.
+     */
+    @TestConfiguration(proxyBeanMethods = false)
+    static class StatementCounting {
+
+        private static final Set<String> STATEMENT_FACTORIES = Set.of("createStatement", "prepareStatement", "prepareCall");
+        private static final ThreadLocal<int[]> COUNTER = new ThreadLocal<>();
+
+        static void start() {
+            COUNTER.set(new int[1]);
+        }
+
+        static int stop() {
+            int count = COUNTER.get()[0];
+            COUNTER.remove();
+            return count;
+        }
+
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ds ? new CountingDataSource(ds) : bean;
+                }
+            };
+        }
+
+        private static final class CountingDataSource extends DelegatingDataSource {
+
+            CountingDataSource(DataSource target) {
+                super(target);
+            }
+
+            @Override
+            public Connection getConnection() throws SQLException {
+                return counting(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return counting(super.getConnection(username, password));
+            }
+
+            private static Connection counting(Connection target) {
+                return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                        (proxy, method, args) -> {
+                            int[] counter = COUNTER.get();
+                            if (counter != null && STATEMENT_FACTORIES.contains(method.getName())) counter[0]++;
+                            try {
+                                return method.invoke(target, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.stepapp.steps;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group leaderboard cost for large groups: the incrementally maintained board (one update per upload,
+ * top-N slice per read) against re-ranking all members on every read, which is what the
+ * load-members-then-IN-query path amounted to. Reports average time per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupLeaderboardBenchmark {
+
+    private static final int TOP = 10;
+
+    @Param({"10000", "100000"})
+    int members;
+
+    private RankedDailyBoard board;
+    private long[] totals;
+    private Random rnd;
+    private long sequence;
+
+    @Setup
+    public void setup() {
+        board = new RankedDailyBoard(false);
+        totals = new long[members];
+        rnd = new Random(42);
+        for (int i = 0; i < members; i++) {
+            totals[i] = rnd.nextInt(25_000);
+            board.seed(i, totals[i]);
+        }
+        board.markSeeded();
+        sequence = RankedDailyBoard.SEED_SEQUENCE;
+    }
+
+    @Benchmark
+    public long uploadUpdatesBoard() {
+        int member = rnd.nextInt(members);
+        totals[member] += 1 + rnd.nextInt(500);
+        board.set(member, totals[member], ++sequence);
+        return totals[member];
+    }
+
+    @Benchmark
+    public List<RankedDailyBoard.Ranked> readTopN() {
+        return board.top(TOP);
+    }
+
+    @Benchmark
+    public long readMyRank() {
+        return board.rankOf(rnd.nextInt(members));
+    }
+
+    @Benchmark
+    public long[] baselineRankAllMembersPerRead() {
+        long[] copy = totals.clone();
+        Arrays.sort(copy);
+        return Arrays.copyOfRange(copy, copy.length - TOP, copy.length);
+    }
+}
@@ -0,0 +1,54 @@
+package com.stepapp.steps;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconciliation cost on dense minute-level data: three providers each reporting every minute,
+ * with jittered boundaries so almost every interval overlaps intervals of the other providers.
+ * Reports samples reconciled per second (two passes per upload, as ProviderOverlapReconciler does).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntervalReconcilerBenchmark {
+
+    @Param({"1440", "43200"})
+    int minutes;
+
+    private IntervalReconciler reconciler;
+    private boolean[] withoutNew;
+
+    @Setup
+    public void setup() {
+        int providers = 3;
+        int n = minutes * providers;
+        long[] start = new long[n], end = new long[n], steps = new long[n];
+        int[] priority = new int[n];
+        withoutNew = new boolean[n];
+        Random rnd = new Random(42);
+        for (int i = 0; i < n; i++) {
+            int minute = i / providers;
+            long jitter = rnd.nextInt(20_000);
+            start[i] = minute * 60_000L + jitter;
+            end[i] = start[i] + 60_000L;
+            steps[i] = 40 + rnd.nextInt(80);
+            priority[i] = i % providers;
+            // the last provider's samples play the role of the new upload
+            withoutNew[i] = priority[i] != providers - 1;
+        }
+        reconciler = new IntervalReconciler(start, end, priority, steps, providers);
+    }
+
+    @Benchmark
+    public long reconcileWindow() {
+        long[] after = reconciler.contributions(null);
+        long[] before = reconciler.contributions(withoutNew);
+        return after[after.length - 1] - before[before.length - 1];
+    }
+}
@@ -0,0 +1,61 @@
+package com.stepapp.steps;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntervalReconcilerTest {
+
+    private static final long MIN = 60_000;
+
+    @Test
+    void betterProviderSuppressesOverlapProportionally() {
+        // priority 0 covers minutes [0,10), priority 1 covers [5,15) with 100 steps
+        var r = new IntervalReconciler(
+                new long[]{0, 5 * MIN},
+                new long[]{10 * MIN, 15 * MIN},
+                new int[]{0, 1},
+                new long[]{80, 100},
+                2);
+
+        assertThat(r.contributions(null)).containsExactly(80, 50);
+    }
+
+    @Test
+    void sameProviderOverlapsAreSummed() {
+        var r = new IntervalReconciler(
+                new long[]{0, 5 * MIN},
+                new long[]{10 * MIN, 15 * MIN},
+                new int[]{1, 1},
+                new long[]{80, 100},
+                2);
+
+        assertThat(r.contributions(null)).containsExactly(80, 100);
+    }
+
+    @Test
+    void excludedSamplesDoNotSuppressOthers() {
+        var r = new IntervalReconciler(
+                new long[]{0, 0},
+                new long[]{10 * MIN, 10 * MIN},
+                new int[]{0, 1},
+                new long[]{70, 90},
+                2);
+
+        assertThat(r.contributions(new boolean[]{false, true})).containsExactly(0, 90);
+        assertThat(r.contributions(null)).containsExactly(70, 0);
+    }
+
+    @Test
+    void instantSampleCountsUnlessCoveredByBetterProvider() {
+        var r = new IntervalReconciler(
+                new long[]{0, 5 * MIN, 10 * MIN},
+                new long[]{10 * MIN, 5 * MIN, 10 * MIN},
+                new int[]{0, 1, 1},
+                new long[]{50, 7, 9},
+                2);
+
+        // the first instant lies inside the better interval, the second one at its (exclusive) end
+        assertThat(r.contributions(null)).containsExactly(50, 0, 9);
+    }
+}
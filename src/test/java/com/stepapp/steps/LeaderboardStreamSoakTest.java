@@ -0,0 +1,140 @@
+package com.stepapp.steps;
+
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.auth.jwt.JwtService;
+import com.stepapp.group.GroupService;
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsRequest;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.*;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Holds tens of thousands of idle leaderboard streams on one node, then checks that one upload reaches all of
+ * them and that idle streams did not cost threads. Opt-in, since it needs a raised file descriptor limit:
+ * {@code ulimit -n 100000; mvn test -Dtest=LeaderboardStreamSoakTest -Dsoak=true [-Dsoak.connections=20000 -Dsoak.idle=PT1M]}
+ */
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "steps.leaderboard.streams.coalesce-window=PT0.5S",
+        "steps.leaderboard.streams.heartbeat-interval=PT10S"
+})
+@EnabledIfSystemProperty(named = "soak", matches = "true")
+class LeaderboardStreamSoakTest {
+
+    private static final int CONNECTIONS = Integer.getInteger("soak.connections", 20_000);
+    private static final Duration IDLE = Duration.parse(System.getProperty("soak.idle", "PT1M"));
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private GroupService groupService;
+
+    @Autowired
+    private StepService stepService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void idleStreamsHoldNoThreadsAndAllReceiveOneUpdate() throws Exception {
+        User owner = userService.save(User.builder()
+                .email("soak-" + UUID.randomUUID() + "@test.local")
+                .username("soak-" + UUID.randomUUID())
+                .passwordHash("x")
+                .timezone("UTC")
+                .build());
+        long groupId = groupService.createGroup(owner.getUsername(), "soak", null, false).id();
+        LocalDate date = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(
+                        "http://localhost:" + port + "/api/steps/leaderboard/groups/" + groupId + "/stream?date=" + date))
+                .header("Authorization", "Bearer " + jwtService.generateToken(owner.getUsername()))
+                .header("Accept", "text/event-stream")
+                .build();
+
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        CountDownLatch snapshots = new CountDownLatch(CONNECTIONS);
+        CountDownLatch updates = new CountDownLatch(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new EventCounter(snapshots, updates)));
+        }
+        assertThat(snapshots.await(5, TimeUnit.MINUTES)).isTrue();
+
+        Thread.sleep(IDLE.toMillis());
+        assertThat(meterRegistry.get("steps.leaderboard.streams.subscribers").gauge().value()).isEqualTo(CONNECTIONS);
+        // Server and client threads must not grow with the number of idle streams
+        assertThat(ManagementFactory.getThreadMXBean().getThreadCount()).isLessThan(threadsBefore + 300);
+
+        OffsetDateTime start = date.atTime(12, 0).atOffset(ZoneOffset.UTC);
+        stepService.ingest(owner.getUsername(), new UploadStepsRequest("MOCK", null,
+                List.of(new StepSampleDto("soak-1", start, start.plusMinutes(5), 500, null))));
+
+        assertThat(updates.await(5, TimeUnit.MINUTES)).isTrue();
+        assertThat(meterRegistry.get("steps.leaderboard.streams.dropped").counters())
+                .allSatisfy(c -> assertThat(c.count()).isZero());
+    }
+
+    /**
+     * Counts "leaderboard" events of one stream: the first is the snapshot, the second the pushed update.
+     */
+    private static final class EventCounter implements Flow.Subscriber<String> {
+        private final CountDownLatch snapshots;
+        private final CountDownLatch updates;
+        private int events;
+
+        EventCounter(CountDownLatch snapshots, CountDownLatch updates) {
+            this.snapshots = snapshots;
+            this.updates = updates;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith("event:leaderboard")) return;
+            events++;
+            if (events == 1) snapshots.countDown();
+            else if (events == 2) updates.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
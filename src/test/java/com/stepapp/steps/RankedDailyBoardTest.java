@@ -0,0 +1,116 @@
+package com.stepapp.steps;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RankedDailyBoardTest {
+
+    @Test
+    void ranksUseCompetitionRankingWithTiesByUserId() {
+        var board = new RankedDailyBoard();
+        board.set(1, 500, 1);
+        board.set(2, 900, 2);
+        board.set(3, 500, 3);
+        board.set(4, 100, 4);
+
+        assertThat(board.top(10)).containsExactly(
+                new RankedDailyBoard.Ranked(1, 2, 900),
+                new RankedDailyBoard.Ranked(2, 1, 500),
+                new RankedDailyBoard.Ranked(2, 3, 500),
+                new RankedDailyBoard.Ranked(4, 4, 100));
+        assertThat(board.rankOf(3)).isEqualTo(2);
+        assertThat(board.rankOf(4)).isEqualTo(4);
+        assertThat(board.rankOf(99)).isEqualTo(-1);
+    }
+
+    @Test
+    void olderSequenceAndSeedDoNotOverwriteNewerTotals() {
+        var board = new RankedDailyBoard();
+        board.set(1, 700, 5);
+        board.set(1, 300, 4);   // late notification of an earlier commit
+        board.seed(1, 100);     // stale snapshot
+        board.set(2, 200, 6);
+
+        assertThat(board.stepsOf(1)).isEqualTo(700);
+        assertThat(board.rankOf(2)).isEqualTo(2);
+
+        board.set(1, 100, 7);
+        assertThat(board.rankOf(2)).isEqualTo(1);
+        assertThat(board.size()).isEqualTo(2);
+    }
+
+    @Test
+    void totalsAboveTheBucketCapStillRankExactly() {
+        var board = new RankedDailyBoard();
+        long cap = RankedDailyBoard.STEP_CAP;
+        board.set(1, cap + 10, 1);
+        board.set(2, cap + 5, 2);
+        board.set(3, 50, 3);
+
+        assertThat(board.rankOf(2)).isEqualTo(2);
+        assertThat(board.rankOf(3)).isEqualTo(3);
+
+        board.remove(1, 4);
+        assertThat(board.rankOf(2)).isEqualTo(1);
+    }
+
+    @Test
+    void overflowTotalsRankExactlyAcrossAndWithinBuckets() {
+        var board = new RankedDailyBoard();
+        var reference = new RankedDailyBoard(false);
+        long[] totals = {300_000, 300_001, 300_001, 1L << 20, (1L << 20) + 1, 5_000_000_000L, Long.MAX_VALUE, 200_000, 0};
+        for (int i = 0; i < totals.length; i++) {
+            board.set(i + 1, totals[i], i + 1);
+            reference.set(i + 1, totals[i], i + 1);
+        }
+
+        for (long userId = 1; userId <= totals.length; userId++) {
+            assertThat(board.rankOf(userId)).as("user %d", userId).isEqualTo(reference.rankOf(userId));
+        }
+        assertThat(board.rankOf(7)).isEqualTo(1);
+        assertThat(board.rankOf(2)).isEqualTo(5);
+        assertThat(board.rankOf(3)).isEqualTo(5);
+    }
+
+    @Test
+    void keysetPagesContinueOrderAndRanksFromTheCursor() {
+        var board = new RankedDailyBoard();
+        board.set(1, 500, 1);
+        board.set(2, 900, 2);
+        board.set(3, 500, 3);
+        board.set(4, 100, 4);
+
+        var cursor = LeaderboardCursor.FIRST;
+        for (var e : board.after(cursor.steps(), cursor.userId(), 2)) cursor = cursor.next(e.userId(), e.steps());
+        cursor = LeaderboardCursor.decode(cursor.encode());
+        assertThat(cursor).isEqualTo(new LeaderboardCursor(500, 1, 2, 2));
+
+        var page = board.after(cursor.steps(), cursor.userId(), 2);
+        assertThat(page).containsExactly(new RankedDailyBoard.Entry(3, 500), new RankedDailyBoard.Entry(4, 100));
+        var tied = cursor.next(3, 500);
+        assertThat(tied.rank()).isEqualTo(2);
+        assertThat(tied.next(4, 100).rank()).isEqualTo(4);
+    }
+
+    @Test
+    void unindexedBoardRanksLikeTheIndexedOne() {
+        var indexed = new RankedDailyBoard();
+        var small = new RankedDailyBoard(false);
+        long[][] updates = {{1, 500}, {2, 900}, {3, 500}, {4, 100}, {2, 50}, {5, RankedDailyBoard.STEP_CAP + 1}};
+        long seq = 0;
+        for (long[] u : updates) {
+            indexed.set(u[0], u[1], ++seq);
+            small.set(u[0], u[1], seq);
+        }
+        small.remove(4, ++seq);
+        indexed.remove(4, seq);
+
+        for (long userId = 1; userId <= 5; userId++) {
+            assertThat(small.rankOf(userId)).isEqualTo(indexed.rankOf(userId));
+        }
+        assertThat(small.top(10)).isEqualTo(indexed.top(10));
+        assertThatThrownBy(small::histogram).isInstanceOf(IllegalStateException.class);
+    }
+}
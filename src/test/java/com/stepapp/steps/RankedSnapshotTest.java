@@ -0,0 +1,60 @@
+package com.stepapp.steps;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RankedSnapshotTest {
+
+    @Test
+    void roundTripKeepsOrderRanksAndLookups() {
+        long[] ids = {42, 7, 9, 1_000_000_000_000L, 3};
+        long[] steps = {12_000, 8_000, 8_000, 8_000, 0};
+        var snapshot = RankedSnapshot.decode(RankedSnapshot.encode(ids, steps, ids.length));
+
+        assertThat(snapshot.size()).isEqualTo(5);
+        assertThat(snapshot.after(Long.MAX_VALUE, Long.MIN_VALUE, 10)).containsExactly(
+                new RankedDailyBoard.Entry(42, 12_000),
+                new RankedDailyBoard.Entry(7, 8_000),
+                new RankedDailyBoard.Entry(9, 8_000),
+                new RankedDailyBoard.Entry(1_000_000_000_000L, 8_000),
+                new RankedDailyBoard.Entry(3, 0));
+        // Keyset continuation inside a run of ties
+        assertThat(snapshot.after(8_000, 7, 2)).containsExactly(
+                new RankedDailyBoard.Entry(9, 8_000),
+                new RankedDailyBoard.Entry(1_000_000_000_000L, 8_000));
+
+        assertThat(snapshot.rankOf(42)).isEqualTo(1);
+        assertThat(snapshot.rankOf(1_000_000_000_000L)).isEqualTo(2);
+        assertThat(snapshot.rankOf(3)).isEqualTo(5);
+        assertThat(snapshot.rankOf(99)).isEqualTo(-1);
+        assertThat(snapshot.stepsOf(9)).isEqualTo(8_000);
+        assertThat(snapshot.histogram().position(8_000).total()).isEqualTo(5);
+    }
+
+    @Test
+    void emptyAndUnorderedInput() {
+        var empty = RankedSnapshot.decode(RankedSnapshot.encode(new long[0], new long[0], 0));
+        assertThat(empty.size()).isZero();
+        assertThat(empty.rankOf(1)).isEqualTo(-1);
+
+        assertThatThrownBy(() -> RankedSnapshot.encode(new long[]{1, 2}, new long[]{5, 6}, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void dateClosesOnceItEndedInTheLastTimezonePlusGrace() {
+        // 2025-03-10 ends at 2025-03-11T12:00Z in UTC-12
+        assertThat(LeaderboardSnapshotFinalizer.lastClosedDate(Instant.parse("2025-03-11T11:59:00Z"), Duration.ZERO))
+                .isEqualTo(LocalDate.of(2025, 3, 9));
+        assertThat(LeaderboardSnapshotFinalizer.lastClosedDate(Instant.parse("2025-03-11T12:00:00Z"), Duration.ZERO))
+                .isEqualTo(LocalDate.of(2025, 3, 10));
+        assertThat(LeaderboardSnapshotFinalizer.lastClosedDate(Instant.parse("2025-03-11T12:00:00Z"), Duration.ofHours(6)))
+                .isEqualTo(LocalDate.of(2025, 3, 9));
+    }
+}
@@ -0,0 +1,119 @@
+package com.stepapp.steps;
+
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsRequest;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+class StepSamplePartitionTest {
+
+    // Months far before the partitions created ahead of time, so first uploads land in the default partition
+    private static final OffsetDateTime JAN = OffsetDateTime.of(2011, 1, 15, 10, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime FEB = OffsetDateTime.of(2011, 2, 15, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    @Autowired
+    private StepService stepService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private StepSamplePartitionMaintainer maintainer;
+
+    @Autowired
+    private DailyStepsRepository dailyRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void resentSamplesStayDeduplicatedAfterMovingIntoMonthlyPartitions() {
+        User user = newUser();
+        String janId = "jan-" + UUID.randomUUID();
+        var samples = List.of(
+                new StepSampleDto(janId, JAN, JAN.plusMinutes(10), 400, "test"),
+                new StepSampleDto("feb-" + UUID.randomUUID(), FEB, FEB.plusMinutes(10), 600, "test"));
+
+        assertThat(stepService.ingest(user.getUsername(), new UploadStepsRequest("APPLE", null, samples)).accepted())
+                .isEqualTo(2);
+        assertThat(partitionOf(janId)).isEqualTo("step_samples_default");
+
+        maintainer.maintain();
+        assertThat(partitionOf(janId)).isEqualTo("step_samples_p201101");
+
+        var resent = stepService.ingest(user.getUsername(), new UploadStepsRequest("APPLE", null, samples));
+        assertThat(resent.accepted()).isZero();
+        assertThat(resent.skipped()).isEqualTo(2);
+        assertThat(total(user, JAN)).isEqualTo(400);
+        assertThat(total(user, FEB)).isEqualTo(600);
+    }
+
+    @Test
+    void sameExternalIdWithShiftedStartIsNotCountedAgain() {
+        User user = newUser();
+        String id = "fix-" + UUID.randomUUID();
+        stepService.ingest(user.getUsername(), new UploadStepsRequest("APPLE", null,
+                List.of(new StepSampleDto(id, JAN, JAN.plusMinutes(10), 400, "test"))));
+        maintainer.maintain();
+
+        // started_at is part of the unique key (it is the partition key); the externalId check still catches it
+        var shifted = stepService.ingest(user.getUsername(), new UploadStepsRequest("APPLE", null,
+                List.of(new StepSampleDto(id, JAN.plusHours(1), JAN.plusHours(1).plusMinutes(10), 400, "test"))));
+
+        assertThat(shifted.accepted()).isZero();
+        assertThat(total(user, JAN)).isEqualTo(400);
+    }
+
+    @Test
+    void shiftedStartIntoTheNextPartitionIsNotCountedAgain() {
+        User user = newUser();
+        String id = "edge-" + UUID.randomUUID();
+        OffsetDateTime lastHour = OffsetDateTime.of(2011, 1, 31, 23, 30, 0, 0, ZoneOffset.UTC);
+        stepService.ingest(user.getUsername(), new UploadStepsRequest("APPLE", null,
+                List.of(new StepSampleDto(id, lastHour, lastHour.plusMinutes(10), 300, "test"))));
+        maintainer.maintain();
+
+        var shifted = stepService.ingest(user.getUsername(), new UploadStepsRequest("APPLE", null,
+                List.of(new StepSampleDto(id, lastHour.plusHours(1), lastHour.plusHours(1).plusMinutes(10), 300, "test"))));
+
+        assertThat(shifted.accepted()).isZero();
+        assertThat(total(user, lastHour)).isEqualTo(300);
+        assertThat(dailyRepo.findAllByUserAndDateBetween(user, LocalDate.of(2011, 2, 1), LocalDate.of(2011, 2, 1))).isEmpty();
+    }
+
+    private User newUser() {
+        String username = "part_" + UUID.randomUUID().toString().substring(0, 8);
+        return userService.save(User.builder()
+                .email(username + "@test.local")
+                .username(username)
+                .passwordHash("x")
+                .timezone("UTC")
+                .build());
+    }
+
+    private String partitionOf(String externalId) {
+        return jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM step_samples WHERE external_id = ?",
+                String.class, externalId);
+    }
+
+    private long total(User user, OffsetDateTime day) {
+        LocalDate date = day.toLocalDate();
+        return dailyRepo.findAllByUserAndDateBetween(user, date, date).get(0).getStepsTotal();
+    }
+}
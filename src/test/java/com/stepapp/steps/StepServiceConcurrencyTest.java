@@ -0,0 +1,119 @@
+package com.stepapp.steps;
+
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsRequest;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+class StepServiceConcurrencyTest {
+
+    private static final int UPLOADS = 32;
+    private static final int SAMPLES_PER_UPLOAD = 50;
+    private static final int STEPS_PER_SAMPLE = 7;
+
+    @Autowired
+    private StepService stepService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private DailyStepsRepository dailyRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void parallelUploadsDoNotLoseDailyIncrements() throws Exception {
+        User user = newUser();
+        String username = user.getUsername();
+
+        // Two days, so every upload touches both rows of the same user
+        OffsetDateTime day1 = OffsetDateTime.of(2024, 3, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        OffsetDateTime day2 = day1.plusDays(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int u = 0; u < UPLOADS; u++) {
+            final int upload = u;
+            futures.add(pool.submit(() -> {
+                List<StepSampleDto> samples = new ArrayList<>();
+                for (int i = 0; i < SAMPLES_PER_UPLOAD; i++) {
+                    // Disjoint slots per sample, so provider reconciliation leaves every sample counted in full
+                    OffsetDateTime at = (i % 2 == 0 ? day1 : day2).plusSeconds(2L * (upload * SAMPLES_PER_UPLOAD + i));
+                    samples.add(new StepSampleDto("u" + upload + "-" + i, at, at.plusSeconds(1), STEPS_PER_SAMPLE, "test"));
+                }
+                start.await();
+                // Half of the uploads come from a second provider, like a watch racing a phone
+                String provider = upload % 2 == 0 ? "APPLE" : "GOOGLE";
+                return stepService.ingest(username, new UploadStepsRequest(provider, null, samples));
+            }));
+        }
+        start.countDown();
+        for (var f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        long expectedPerDay = (long) UPLOADS * (SAMPLES_PER_UPLOAD / 2) * STEPS_PER_SAMPLE;
+        var totals = dailyRepo.findAllByUserAndDateBetween(user, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 2));
+        assertThat(totals).hasSize(2);
+        assertThat(totals).allSatisfy(d -> assertThat(d.getStepsTotal()).isEqualTo(expectedPerDay));
+    }
+
+    /**
+     * Uploads serialize on the user's advisory lock, which hides the upsert race from the test above; this one
+     * calls the repository directly, without the lock, so concurrent first inserts of a row meet in ON CONFLICT.
+     */
+    @Test
+    void concurrentUpsertsWithoutTheUserLockDoNotLoseIncrements() throws Exception {
+        User user = newUser();
+        LocalDate day1 = LocalDate.of(2024, 4, 1), day2 = day1.plusDays(1);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int u = 0; u < UPLOADS; u++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return tx.execute(status -> dailyRepo.addToTotals(user.getId(), Map.of(day1, 7L, day2, 11L)));
+            }));
+        }
+        start.countDown();
+        for (var f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        var totals = dailyRepo.findTotalsBetween(user.getId(), day1, day2);
+        assertThat(totals).containsExactlyInAnyOrderEntriesOf(Map.of(day1, 7L * UPLOADS, day2, 11L * UPLOADS));
+    }
+
+    private User newUser() {
+        String username = "conc_" + UUID.randomUUID().toString().substring(0, 8);
+        return userService.save(User.builder()
+                .email(username + "@test.local")
+                .username(username)
+                .passwordHash("x")
+                .timezone("UTC")
+                .build());
+    }
+}
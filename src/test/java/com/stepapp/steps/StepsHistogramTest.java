@@ -0,0 +1,45 @@
+package com.stepapp.steps;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepsHistogramTest {
+
+    @Test
+    void bucketsAreExactForSmallValuesAndWithinRelativeBoundAbove() {
+        assertThat(StepsHistogram.bucket(0)).isZero();
+        assertThat(StepsHistogram.bucket(127)).isEqualTo(127);
+        assertThat(StepsHistogram.bucket(128)).isEqualTo(128);
+        assertThat(StepsHistogram.bucket(Long.MAX_VALUE)).isEqualTo(StepsHistogram.BUCKETS - 1);
+
+        // Buckets near 10k are 64 steps wide (< 0.8%): 9_984..10_047
+        assertThat(StepsHistogram.bucket(9_984)).isEqualTo(StepsHistogram.bucket(10_047));
+        assertThat(StepsHistogram.bucket(10_047)).isNotEqualTo(StepsHistogram.bucket(10_048));
+    }
+
+    @Test
+    void positionReflectsAddsAndRemoves() {
+        var h = new StepsHistogram();
+        for (long steps = 0; steps < 1_000; steps++) h.add(steps * 20);
+        h.remove(0);
+        h.add(50_000);
+
+        var pos = h.position(10_000);
+        assertThat(pos.total()).isEqualTo(1_000);
+        assertThat(pos.below() + pos.sameBucket()).isBetween(499L, 505L);
+        assertThat(pos.below()).isBetween(495L, 500L);
+    }
+
+    @Test
+    void usersInAnExactBucketTieInsteadOfBeingUnsure() {
+        var h = new StepsHistogram();
+        h.add(40);
+        h.add(100);
+        h.add(100);
+        h.add(5_000);
+
+        assertThat(h.position(100)).isEqualTo(new StepsHistogram.Position(1, 2, true, 4));
+        assertThat(h.position(5_000).exact()).isFalse();
+    }
+}
@@ -0,0 +1,75 @@
+package com.stepapp.steps;
+
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsRequest;
+import com.stepapp.user.User;
+import com.stepapp.user.UserService;
+import com.stepapp.user.dto.UpdateProfileRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+class TimezoneRebucketerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @Autowired
+    private StepService stepService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private DailyStepsRepository dailyRepo;
+
+    @Autowired
+    private TimezoneRebucketer rebucketer;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void zoneChangeAcrossMidnightMovesTheDayInsteadOfCountingItTwice() {
+        String username = "tz_" + UUID.randomUUID().toString().substring(0, 8);
+        User user = userService.save(User.builder()
+                .email(username + "@test.local")
+                .username(username)
+                .passwordHash("x")
+                .timezone("UTC")
+                .build());
+
+        // 23:30Z is still DAY in UTC, but already the next day in UTC+2
+        OffsetDateTime late = DAY.atTime(23, 30).atOffset(ZoneOffset.UTC);
+        OffsetDateTime noon = DAY.plusDays(1).atTime(12, 0).atOffset(ZoneOffset.UTC);
+        stepService.ingest(username, new UploadStepsRequest("MOCK", null, List.of(
+                new StepSampleDto("tz-1", late, late.plusMinutes(10), 500, null),
+                new StepSampleDto("tz-2", noon, noon.plusMinutes(10), 300, null))));
+        assertThat(totals(user)).containsExactly(500L, 300L, 0L);
+
+        userService.updateProfile(user.getId(), new UpdateProfileRequest(null, null, "Etc/GMT-2"));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> rebucketer.rebuild(user.getId(), ZoneOffset.UTC));
+
+        assertThat(totals(user)).containsExactly(0L, 800L, 0L);
+    }
+
+    private List<Long> totals(User user) {
+        var rows = dailyRepo.findAllByUserAndDateBetween(user, DAY, DAY.plusDays(2));
+        return List.of(DAY, DAY.plusDays(1), DAY.plusDays(2)).stream()
+                .map(d -> rows.stream().filter(r -> r.getDate().equals(d)).mapToLong(DailySteps::getStepsTotal).sum())
+                .toList();
+    }
+}
@@ -0,0 +1,139 @@
+package com.stepapp.steps;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stepapp.TestcontainersConfiguration;
+import com.stepapp.steps.dto.StepSampleDto;
+import com.stepapp.steps.dto.UploadStepsRequest;
+import com.stepapp.steps.dto.UploadStepsResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Two store instances over one database stand in for two nodes receiving the same Idempotency-Key.
+ */
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+class UploadIdempotencyStoreTest {
+
+    private static final UploadStepsRequest REQUEST = request(300);
+    private static final UploadStepsResponse RESPONSE = new UploadStepsResponse(3, 0, Map.of("2025-03-01", 300L));
+
+    @Autowired
+    private IdempotencyRecordRepository recordRepo;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void keyRunningOnOneNodeIsRejectedOnAnotherAndThenReplayed() throws Exception {
+        var nodeA = store();
+        var nodeB = store();
+        String key = UUID.randomUUID().toString();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var runs = new AtomicInteger();
+
+        var first = CompletableFuture.supplyAsync(() -> nodeA.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+            return RESPONSE;
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> nodeB.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> {
+            runs.incrementAndGet();
+            return RESPONSE;
+        })).isInstanceOf(IdempotencyKeyInProgressException.class);
+
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(RESPONSE);
+        assertThat(nodeB.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> {
+            runs.incrementAndGet();
+            return null;
+        })).isEqualTo(RESPONSE);
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void failedUploadReleasesTheClaim() {
+        var nodeA = store();
+        var nodeB = store();
+        String key = UUID.randomUUID().toString();
+
+        assertThatThrownBy(() -> nodeA.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> {
+            throw new IllegalArgumentException("bad batch");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(nodeB.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> RESPONSE)).isEqualTo(RESPONSE);
+    }
+
+    @Test
+    void expiredClaimOfADeadNodeIsTakenOver() {
+        var nodeB = store();
+        String key = UUID.randomUUID().toString();
+        var past = OffsetDateTime.now().minusHours(1);
+        assertThat(recordRepo.claim(1L, key, null, past, past.plusMinutes(5))).isEqualTo(1);
+
+        assertThat(nodeB.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> RESPONSE)).isEqualTo(RESPONSE);
+        assertThat(recordRepo.claim(1L, key, null, past, past.plusMinutes(5))).isZero();
+    }
+
+    @Test
+    void keyReusedForADifferentRequestIsRejectedOnEveryNode() {
+        var nodeA = store();
+        var nodeB = store();
+        String key = UUID.randomUUID().toString();
+        var runs = new AtomicInteger();
+
+        assertThat(nodeA.execute(1L, key, REQUEST, UploadStepsResponse.class, () -> {
+            runs.incrementAndGet();
+            return RESPONSE;
+        })).isEqualTo(RESPONSE);
+
+        var other = request(500);
+        assertThatThrownBy(() -> nodeA.execute(1L, key, other, UploadStepsResponse.class, () -> {
+            runs.incrementAndGet();
+            return RESPONSE;
+        })).isInstanceOf(IdempotencyKeyMismatchException.class);
+        assertThatThrownBy(() -> nodeB.execute(1L, key, other, UploadStepsResponse.class, () -> {
+            runs.incrementAndGet();
+            return RESPONSE;
+        })).isInstanceOf(IdempotencyKeyMismatchException.class);
+        assertThat(runs).hasValue(1);
+    }
+
+    private static UploadStepsRequest request(int steps) {
+        var start = OffsetDateTime.parse("2025-03-01T10:00:00Z");
+        return new UploadStepsRequest("GOOGLE", null,
+                List.of(new StepSampleDto("s-1", start, start.plusMinutes(15), steps, null)));
+    }
+
+    private UploadIdempotencyStore store() {
+        return new UploadIdempotencyStore(recordRepo, objectMapper, 1000, Duration.ofHours(1), true,
+                Duration.ofSeconds(1), Duration.ofMinutes(5));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}